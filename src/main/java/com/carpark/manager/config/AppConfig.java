@@ -1,20 +1,37 @@
 package com.carpark.manager.config;
 
+import com.carpark.manager.service.DepartureRescheduler;
+import com.carpark.manager.service.DepartureScheduler;
 import com.carpark.manager.service.FileSystemPersister;
+import com.carpark.manager.service.H2Persister;
+import com.carpark.manager.service.HandlerOptions;
+import com.carpark.manager.service.MeterHeadroomRebalancer;
+import com.carpark.manager.service.MeterValueStore;
+import com.carpark.manager.service.ParkRegistry;
+import com.carpark.manager.service.PollIntervalAdvisor;
 import com.carpark.manager.service.RequestHandler;
+import com.carpark.manager.service.StatePersister;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
 @Configuration
 @EnableConfigurationProperties
+@EnableScheduling
+@Profile("!router")
 public class AppConfig {
 
     @Autowired
@@ -32,15 +49,101 @@ public class AppConfig {
     @Value("${state-file-directory.path}")
     private String stateFilePath;
 
+    @Value("${state-persister.type:file}")
+    private String statePersisterType;
+
+    @Value("${poll-interval.min-seconds:30}")
+    private long minPollSeconds;
+
+    @Value("${poll-interval.default-seconds:120}")
+    private long defaultPollSeconds;
+
+    @Value("${poll-interval.max-seconds:600}")
+    private long maxPollSeconds;
+
+    @Value("${poll-interval.events-per-max-interval:5}")
+    private int eventsPerMaxPollInterval;
+
+    @Value("${meter-headroom.enabled:false}")
+    private boolean meterHeadroomEnabled;
+
+    @Value("${meter-headroom.safety-margin:2}")
+    private int meterSafetyMargin;
+
+    @Value("${meter-headroom.max-age-seconds:60}")
+    private long meterMaxAgeSeconds;
+
+    @Value("${scheduling.mode:plug-in-order}")
+    private String schedulingMode;
+
+    @Value("${scheduling.watts-per-ampere:690}")
+    private double wattsPerAmpere;
 
     @Bean
-    RequestHandler pluggingService(final FileSystemPersister statePersister) {
-        return new RequestHandler(config.getNames(), maxCurrent, highCurrent, lowCurrent, statePersister);
+    RequestHandler pluggingService(final StatePersister statePersister, final Clock clock,
+                                   final PollIntervalAdvisor pollIntervalAdvisor) {
+        HandlerOptions options = HandlerOptions.DEFAULT.withClock(clock).withPollIntervalAdvisor(pollIntervalAdvisor);
+        if (meterHeadroomEnabled) {
+            options = options.withMeterHeadroom(
+                    new MeterValueStore(clock, meterSafetyMargin, Duration.ofSeconds(meterMaxAgeSeconds)));
+        }
+        switch (schedulingMode) {
+            case "plug-in-order":
+                break;
+            case "departure":
+                if (meterHeadroomEnabled) {
+                    throw new IllegalStateException("scheduling.mode departure cannot be combined with meter-headroom");
+                }
+                options = options.withDepartureScheduler(new DepartureScheduler(wattsPerAmpere));
+                break;
+            default:
+                throw new IllegalStateException("Unknown scheduling.mode " + schedulingMode + ", use plug-in-order or departure");
+        }
+        return new RequestHandler(config.getNames(), maxCurrent, highCurrent, lowCurrent, statePersister, options);
     }
 
     @Bean
-    FileSystemPersister statePersister() {
-        return new FileSystemPersister(Paths.get(stateFilePath));
+    @ConditionalOnProperty(name = "meter-headroom.enabled", havingValue = "true")
+    MeterHeadroomRebalancer meterHeadroomRebalancer(final RequestHandler requestHandler) {
+        return new MeterHeadroomRebalancer(requestHandler);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "scheduling.mode", havingValue = "departure")
+    DepartureRescheduler departureRescheduler(final RequestHandler requestHandler) {
+        return new DepartureRescheduler(requestHandler);
+    }
+
+    @Bean
+    PollIntervalAdvisor pollIntervalAdvisor() {
+        return new PollIntervalAdvisor(Duration.ofSeconds(minPollSeconds), Duration.ofSeconds(defaultPollSeconds),
+                Duration.ofSeconds(maxPollSeconds), eventsPerMaxPollInterval);
+    }
+
+    @Bean
+    ParkRegistry parkRegistry(final Clock clock, final PollIntervalAdvisor pollIntervalAdvisor) {
+        return new ParkRegistry(Paths.get(stateFilePath, "parks"), this::createStatePersister, clock, pollIntervalAdvisor);
+    }
+
+    @Bean
+    Clock clock() {
+        return Clock.systemUTC();
+    }
+
+    @Bean
+    StatePersister statePersister() {
+        return createStatePersister(Paths.get(stateFilePath));
+    }
+
+    private StatePersister createStatePersister(final Path directoryPath) {
+        switch (statePersisterType) {
+            case "file":
+                return new FileSystemPersister(directoryPath);
+            case "h2":
+                return new H2Persister(directoryPath);
+            default:
+                throw new IllegalStateException("Unknown state-persister.type " + statePersisterType + ", use file or h2");
+        }
     }
 
     @Configuration
@@ -0,0 +1,122 @@
+package com.carpark.manager.config;
+
+import com.carpark.manager.domain.ParkAssignment;
+import com.carpark.manager.routing.ConsistentHashRing;
+import com.carpark.manager.routing.ParkRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration of a node routing the requests of the CPs to the manager nodes hosting their parks, active with the
+ * profile {@code router}.
+ */
+@Configuration
+@EnableConfigurationProperties
+@Profile("router")
+public class RouterConfig {
+
+    @Autowired
+    private RouterProperties properties;
+
+    @Value("${router.timeout-millis:2000}")
+    private long timeoutMillis;
+
+    @Bean
+    ParkRouter parkRouter(final RestTemplateBuilder restTemplateBuilder) {
+        final RestTemplate restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofMillis(timeoutMillis))
+                .setReadTimeout(Duration.ofMillis(timeoutMillis))
+                // the responses of the nodes are passed through to the CPs
+                .errorHandler(new ResponseErrorHandler() {
+                    @Override
+                    public boolean hasError(final ClientHttpResponse response) {
+                        return false;
+                    }
+
+                    @Override
+                    public void handleError(final ClientHttpResponse response) {
+                    }
+                })
+                .build();
+        final Map<String, ParkAssignment> parks = new LinkedHashMap<>();
+        properties.getParks().forEach((name, park) -> parks.put(name, new ParkAssignment(park.getMaxCurrent(),
+                park.getHighCurrent(), park.getLowCurrent(), park.getChargingPoints(), null)));
+        return new ParkRouter(restTemplate, parks, new ConsistentHashRing(properties.getNodes(), properties.getVirtualNodes()));
+    }
+
+    @Configuration
+    @ConfigurationProperties(prefix = "router")
+    public static class RouterProperties {
+
+        private final List<String> nodes = new ArrayList<>();
+        private final Map<String, Park> parks = new LinkedHashMap<>();
+        private int virtualNodes = 100;
+
+        public List<String> getNodes() {
+            return nodes;
+        }
+
+        public Map<String, Park> getParks() {
+            return parks;
+        }
+
+        public int getVirtualNodes() {
+            return virtualNodes;
+        }
+
+        public void setVirtualNodes(final int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+        }
+    }
+
+    public static class Park {
+
+        private final List<String> chargingPoints = new ArrayList<>();
+        private int maxCurrent;
+        private int highCurrent;
+        private int lowCurrent;
+
+        public List<String> getChargingPoints() {
+            return chargingPoints;
+        }
+
+        public int getMaxCurrent() {
+            return maxCurrent;
+        }
+
+        public void setMaxCurrent(final int maxCurrent) {
+            this.maxCurrent = maxCurrent;
+        }
+
+        public int getHighCurrent() {
+            return highCurrent;
+        }
+
+        public void setHighCurrent(final int highCurrent) {
+            this.highCurrent = highCurrent;
+        }
+
+        public int getLowCurrent() {
+            return lowCurrent;
+        }
+
+        public void setLowCurrent(final int lowCurrent) {
+            this.lowCurrent = lowCurrent;
+        }
+    }
+}
@@ -1,21 +1,37 @@
 package com.carpark.manager.controllers;
 
+import com.carpark.manager.domain.ChargingDemand;
 import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.MeterValue;
+import com.carpark.manager.domain.ParkQuery;
+import com.carpark.manager.domain.SimulationRequest;
 import com.carpark.manager.service.RequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.http.MediaType.TEXT_PLAIN_VALUE;
 
 
 @RestController
+@Profile("!router")
 public class CarparkController {
 
+    /**
+     * Response header telling a CP after how many seconds it should poll its allowed current again.
+     */
+    public static final String NEXT_POLL_HEADER = "X-Next-Poll-Seconds";
+
     private final RequestHandler requestHandler;
 
     @Autowired
@@ -23,16 +39,31 @@ public class CarparkController {
         this.requestHandler = requestHandler;
     }
 
-    private static String formatCpListToString(final List<ChargingPoint> cpList) {
+    static String formatCpListToString(final List<ChargingPoint> cpList) {
+        // waiting CPs get current in the order they plugged in, so their queue position follows from that order
+        final Map<String, Integer> queuePositions = new HashMap<>();
+        cpList.stream().filter(ChargingPoint::isWaiting).sorted(ChargingPoint.BY_PLUG_IN_ORDER)
+                .forEach(cp -> queuePositions.put(cp.getName(), queuePositions.size() + 1));
         final StringBuilder sb = new StringBuilder();
-        cpList.stream().sorted(Comparator.comparing(ChargingPoint::getName)).forEach(cp -> sb.append(cp.toString()).append("\n"));
+        cpList.stream().sorted(Comparator.comparing(ChargingPoint::getName)).forEach(cp -> {
+            sb.append(cp.toString());
+            if (cp.isWaiting()) {
+                sb.append(' ').append(queuePositions.get(cp.getName()));
+            }
+            sb.append("\n");
+        });
         return sb.toString();
     }
 
     @RequestMapping(value = "/cp/plugin/{cpName}", method = RequestMethod.PUT, produces = TEXT_PLAIN_VALUE)
     @ResponseBody
-    public HttpEntity<String> aCarPluggedIn(@PathVariable final String cpName) {
-        requestHandler.plugIn(cpName);
+    public HttpEntity<String> aCarPluggedIn(@PathVariable final String cpName,
+                                            @RequestParam(required = false) final Double energyKwh,
+                                            @RequestParam(required = false) final Instant departure) {
+        if (energyKwh != null && !(energyKwh > 0 && Double.isFinite(energyKwh))) {
+            return ResponseEntity.badRequest().body("energyKwh has to be greater 0");
+        }
+        requestHandler.plugIn(cpName, new ChargingDemand(energyKwh, departure == null ? null : departure.toEpochMilli()));
         return ResponseEntity.ok().body("OK, successfully plugged in " + cpName);
     }
 
@@ -45,8 +76,17 @@ public class CarparkController {
 
     @RequestMapping(value = "/cp/current/{cpName}", method = RequestMethod.GET, produces = TEXT_PLAIN_VALUE)
     @ResponseBody
-    public HttpEntity<Integer> getAllowedCurrent(@PathVariable final String cpName) {
-        return ResponseEntity.ok(requestHandler.getAllowedCurrent(cpName));
+    public HttpEntity<String> getAllowedCurrent(@PathVariable final String cpName) {
+        return ResponseEntity.ok()
+                .header(NEXT_POLL_HEADER, String.valueOf(requestHandler.getNextPollInterval(cpName).getSeconds()))
+                .body(String.valueOf(requestHandler.getAllowedCurrent(cpName)));
+    }
+
+    @RequestMapping(value = "/cp/meter", method = RequestMethod.PUT, consumes = APPLICATION_JSON_VALUE, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> meterValues(@RequestBody final List<MeterValue> meterValues) {
+        requestHandler.recordMeterValues(meterValues);
+        return ResponseEntity.ok().body("OK, successfully recorded " + meterValues.size() + " meter values");
     }
 
     @RequestMapping(value = "/park/report", method = RequestMethod.GET, produces = TEXT_PLAIN_VALUE)
@@ -55,4 +95,24 @@ public class CarparkController {
         return ResponseEntity.ok(formatCpListToString(requestHandler.getChargingPoints()));
     }
 
+    @RequestMapping(value = "/park/query", method = RequestMethod.GET, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> query(@RequestParam(required = false) final ParkQuery.Status status,
+                                    @RequestParam(required = false) final ParkQuery.CurrentLevel currentLevel,
+                                    @RequestParam(required = false) final Long pluggedLongerThan) {
+        final ParkQuery query = new ParkQuery(status, currentLevel,
+                pluggedLongerThan == null ? null : Duration.ofSeconds(pluggedLongerThan));
+        return ResponseEntity.ok(formatCpListToString(requestHandler.query(query)));
+    }
+
+    @RequestMapping(value = "/park/simulation", method = RequestMethod.POST, consumes = APPLICATION_JSON_VALUE, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> simulate(@RequestBody final SimulationRequest simulationRequest) {
+        if (simulationRequest.getMaxCurrent().map(maxCurrent -> maxCurrent <= 0).orElse(false)) {
+            return ResponseEntity.badRequest().body("maxCurrent has to be greater 0");
+        }
+        return ResponseEntity.ok(formatCpListToString(
+                requestHandler.simulate(simulationRequest.getEvents(), simulationRequest.getMaxCurrent().orElse(null))));
+    }
+
 }
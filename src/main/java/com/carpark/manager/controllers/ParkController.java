@@ -0,0 +1,86 @@
+package com.carpark.manager.controllers;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.ParkAssignment;
+import com.carpark.manager.service.ParkRegistry;
+import com.carpark.manager.service.RequestHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+import static com.carpark.manager.controllers.CarparkController.NEXT_POLL_HEADER;
+import static com.carpark.manager.controllers.CarparkController.formatCpListToString;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.TEXT_PLAIN_VALUE;
+
+/**
+ * The API of the parks a node hosts when the parks are sharded across several nodes, used by the router.
+ */
+@RestController
+@Profile("!router")
+public class ParkController {
+
+    private final ParkRegistry parkRegistry;
+
+    @Autowired
+    public ParkController(final ParkRegistry parkRegistry) {
+        this.parkRegistry = parkRegistry;
+    }
+
+    @RequestMapping(value = "/parks/{park}", method = RequestMethod.PUT, consumes = APPLICATION_JSON_VALUE, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> host(@PathVariable final String park, @RequestBody final ParkAssignment assignment) {
+        final boolean hosted = parkRegistry.host(park, assignment);
+        return ResponseEntity.ok().body((hosted ? "OK, hosting park " : "OK, already hosting park ") + park);
+    }
+
+    @RequestMapping(value = "/parks/{park}", method = RequestMethod.GET, produces = APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<ChargingPoint> getState(@PathVariable final String park) {
+        return parkRegistry.withPark(park, RequestHandler::getChargingPoints);
+    }
+
+    @RequestMapping(value = "/parks/{park}", method = RequestMethod.DELETE, produces = APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<ChargingPoint> release(@PathVariable final String park) {
+        return parkRegistry.release(park);
+    }
+
+    @RequestMapping(value = "/parks/{park}/cp/plugin/{cpName}", method = RequestMethod.PUT, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> aCarPluggedIn(@PathVariable final String park, @PathVariable final String cpName) {
+        parkRegistry.withPark(park, requestHandler -> {
+            requestHandler.plugIn(cpName);
+            return null;
+        });
+        return ResponseEntity.ok().body("OK, successfully plugged in " + cpName);
+    }
+
+    @RequestMapping(value = "/parks/{park}/cp/plugoff/{cpName}", method = RequestMethod.PUT, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> aCarPluggedOff(@PathVariable final String park, @PathVariable final String cpName) {
+        parkRegistry.withPark(park, requestHandler -> {
+            requestHandler.plugOff(cpName);
+            return null;
+        });
+        return ResponseEntity.ok().body("OK, successfully plugged off " + cpName);
+    }
+
+    @RequestMapping(value = "/parks/{park}/cp/current/{cpName}", method = RequestMethod.GET, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> getAllowedCurrent(@PathVariable final String park, @PathVariable final String cpName) {
+        return parkRegistry.withPark(park, requestHandler -> ResponseEntity.ok()
+                .header(NEXT_POLL_HEADER, String.valueOf(requestHandler.getNextPollInterval(cpName).getSeconds()))
+                .body(String.valueOf(requestHandler.getAllowedCurrent(cpName))));
+    }
+
+    @RequestMapping(value = "/parks/{park}/report", method = RequestMethod.GET, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> getReport(@PathVariable final String park) {
+        return ResponseEntity.ok(formatCpListToString(parkRegistry.withPark(park, RequestHandler::getChargingPoints)));
+    }
+}
@@ -0,0 +1,74 @@
+package com.carpark.manager.controllers;
+
+import com.carpark.manager.routing.ParkRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+import static com.carpark.manager.controllers.CarparkController.NEXT_POLL_HEADER;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.TEXT_PLAIN_VALUE;
+
+/**
+ * The API of the CPs on a router node, forwarding each request to the manager node hosting the park of the CP.
+ */
+@RestController
+@Profile("router")
+public class RouterController {
+
+    private final ParkRouter parkRouter;
+
+    @Autowired
+    public RouterController(final ParkRouter parkRouter) {
+        this.parkRouter = parkRouter;
+    }
+
+    private static HttpEntity<String> passThrough(final ResponseEntity<String> response) {
+        final ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.getStatusCode());
+        final String nextPoll = response.getHeaders().getFirst(NEXT_POLL_HEADER);
+        if (nextPoll != null) {
+            builder.header(NEXT_POLL_HEADER, nextPoll);
+        }
+        return builder.body(response.getBody());
+    }
+
+    @RequestMapping(value = "/cp/plugin/{cpName}", method = RequestMethod.PUT, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> aCarPluggedIn(@PathVariable final String cpName) {
+        return passThrough(parkRouter.plugIn(cpName));
+    }
+
+    @RequestMapping(value = "/cp/plugoff/{cpName}", method = RequestMethod.PUT, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> aCarPluggedOff(@PathVariable final String cpName) {
+        return passThrough(parkRouter.plugOff(cpName));
+    }
+
+    @RequestMapping(value = "/cp/current/{cpName}", method = RequestMethod.GET, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> getAllowedCurrent(@PathVariable final String cpName) {
+        return passThrough(parkRouter.getAllowedCurrent(cpName));
+    }
+
+    @RequestMapping(value = "/park/report", method = RequestMethod.GET, produces = TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public HttpEntity<String> getReport() {
+        return ResponseEntity.ok(parkRouter.getReport());
+    }
+
+    @RequestMapping(value = "/router/parks", method = RequestMethod.GET, produces = APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Map<String, String> getOwners() {
+        return parkRouter.getOwners();
+    }
+
+    @RequestMapping(value = "/router/nodes", method = RequestMethod.POST, produces = APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Map<String, String> addNode(@RequestParam final String url) {
+        return parkRouter.addNode(url);
+    }
+}
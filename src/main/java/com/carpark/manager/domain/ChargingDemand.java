@@ -0,0 +1,46 @@
+package com.carpark.manager.domain;
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * What the driver of a plugged in car needs: the energy to charge and the time the car leaves. Both are optional,
+ * without an energy target the car takes all it can get, without a departure time it is not scheduled by deadline.
+ */
+public class ChargingDemand {
+
+    /**
+     * Demand of a car whose driver told nothing.
+     */
+    public static final ChargingDemand NONE = new ChargingDemand(null, null);
+
+    private final Double energyKwh;
+    private final Long departureTimestamp;
+
+    /**
+     * Constructor
+     *
+     * @param energyKwh          energy to charge in kWh, null if unknown
+     * @param departureTimestamp time the car leaves in milliseconds since the epoch, null if unknown
+     */
+    public ChargingDemand(final Double energyKwh, final Long departureTimestamp) {
+        checkArgument(energyKwh == null || energyKwh > 0 && Double.isFinite(energyKwh), "energyKwh has to be greater 0");
+        this.energyKwh = energyKwh;
+        this.departureTimestamp = departureTimestamp;
+    }
+
+    public Optional<Double> getEnergyKwh() {
+        return Optional.ofNullable(energyKwh);
+    }
+
+    public Optional<Long> getDepartureTimestamp() {
+        return Optional.ofNullable(departureTimestamp);
+    }
+
+    @Override
+    public String toString() {
+        return (energyKwh == null ? "any energy" : energyKwh + "kWh")
+                + (departureTimestamp == null ? "" : " until " + departureTimestamp);
+    }
+}
@@ -1,16 +1,27 @@
 package com.carpark.manager.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Comparator;
+
 /**
  * Representation of a charging point with its statuses.
  */
 public class ChargingPoint {
+    /**
+     * Orders CPs by the time a car was plugged in, using the plug-in sequence to order plug-ins of the same millisecond.
+     */
+    public static final Comparator<ChargingPoint> BY_PLUG_IN_ORDER = Comparator
+            .comparingLong(ChargingPoint::getPlugInTimestamp)
+            .thenComparingLong(ChargingPoint::getPlugInSequence);
+
     private final String name;
     private boolean plugged = false;
     private int current = 0;
     private long plugInTimestamp = 0L;
+    private long plugInSequence = 0L;
 
     /**
      * Constructor
@@ -21,13 +32,24 @@ public class ChargingPoint {
         this.name = name;
     }
 
+    /**
+     * Constructor restoring a persisted CP
+     *
+     * @param name            Name of the CP
+     * @param plugged         whether a car is plugged in
+     * @param current         allowed current in Ampere
+     * @param plugInTimestamp time of the plug-in in milliseconds since the epoch
+     * @param plugInSequence  monotonic number of the plug-in
+     */
     @JsonCreator
-    private ChargingPoint(@JsonProperty("name") final String name, @JsonProperty("plugged") final boolean plugged,
-                          @JsonProperty("current") final int current, @JsonProperty("plugInTimestamp") final long plugInTimestamp) {
+    public ChargingPoint(@JsonProperty("name") final String name, @JsonProperty("plugged") final boolean plugged,
+                         @JsonProperty("current") final int current, @JsonProperty("plugInTimestamp") final long plugInTimestamp,
+                         @JsonProperty("plugInSequence") final long plugInSequence) {
         this.name = name;
         this.plugged = plugged;
         this.current = current;
         this.plugInTimestamp = plugInTimestamp;
+        this.plugInSequence = plugInSequence;
     }
 
     /**
@@ -36,7 +58,7 @@ public class ChargingPoint {
      * @return a copy ot this CP with the same statuses
      */
     public ChargingPoint copy() {
-        return new ChargingPoint(name, plugged, current, plugInTimestamp);
+        return new ChargingPoint(name, plugged, current, plugInTimestamp, plugInSequence);
     }
 
     public String getName() {
@@ -47,6 +69,14 @@ public class ChargingPoint {
         return plugged;
     }
 
+    /**
+     * @return true if a car is plugged in but waits for current, because the max. current was not sufficient
+     */
+    @JsonIgnore
+    public boolean isWaiting() {
+        return plugged && current == 0;
+    }
+
     public int getCurrent() {
         return current;
     }
@@ -59,24 +89,36 @@ public class ChargingPoint {
         return plugInTimestamp;
     }
 
+    public long getPlugInSequence() {
+        return plugInSequence;
+    }
+
     /**
-     * Sets plugged to true and sets the current timestamp
+     * Sets plugged to true and sets the given timestamp and sequence
+     *
+     * @param timestamp time of the plug-in in milliseconds since the epoch
+     * @param sequence  monotonic number of the plug-in to order plug-ins of the same millisecond
      */
-    public void plugIn() {
+    public void plugIn(final long timestamp, final long sequence) {
         plugged = true;
-        plugInTimestamp = System.currentTimeMillis();
+        plugInTimestamp = timestamp;
+        plugInSequence = sequence;
     }
 
     /**
-     * Sets plugged to false, timestamp to 0 and current to 0
+     * Sets plugged to false, timestamp and sequence to 0 and current to 0
      */
     public void plugOff() {
         plugged = false;
         plugInTimestamp = 0;
+        plugInSequence = 0;
         current = 0;
     }
 
     public String toString() {
+        if (isWaiting()) {
+            return name + " WAITING";
+        }
         return name + " " + (plugged ? "OCCUPIED" : "AVAILABLE") + (plugged ? " " + current + "A" : "");
     }
 }
@@ -0,0 +1,52 @@
+package com.carpark.manager.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A reading of the current a car actually draws at a CP, as reported by the meter of the CP.
+ */
+public class MeterValue {
+
+    private final String cpName;
+    private final double current;
+    private final Long timestamp;
+
+    /**
+     * Constructor
+     *
+     * @param cpName    Name of the CP the reading belongs to
+     * @param current   drawn current in Ampere, required
+     * @param timestamp time of the reading in milliseconds since the epoch, null for the time it is received
+     */
+    @JsonCreator
+    public MeterValue(@JsonProperty("cpName") final String cpName, @JsonProperty(value = "current", required = true) final Double current,
+                      @JsonProperty("timestamp") final Long timestamp) {
+        this.cpName = checkNotNull(cpName, "cpName must not be null");
+        checkNotNull(current, "current must not be null");
+        checkArgument(current >= 0, "current must not be negative");
+        this.current = current;
+        this.timestamp = timestamp;
+    }
+
+    public String getCpName() {
+        return cpName;
+    }
+
+    public double getCurrent() {
+        return current;
+    }
+
+    public Optional<Long> getTimestamp() {
+        return Optional.ofNullable(timestamp);
+    }
+
+    public String toString() {
+        return cpName + " " + current + "A";
+    }
+}
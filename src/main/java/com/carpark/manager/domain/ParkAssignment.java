@@ -0,0 +1,75 @@
+package com.carpark.manager.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Tells a manager node to host a park: its configuration and, if the park moves from another node, its state.
+ */
+public class ParkAssignment {
+
+    private final int maxCurrent;
+    private final int highCurrent;
+    private final int lowCurrent;
+    private final List<String> chargingPoints;
+    private final List<ChargingPoint> state;
+
+    /**
+     * Constructor
+     *
+     * @param maxCurrent     max. available current in total in Ampere
+     * @param highCurrent    max. current per CP in Ampere for fast charging
+     * @param lowCurrent     max. current per CP in Ampere for slow charging
+     * @param chargingPoints names of the CPs of the park
+     * @param state          the CPs as persisted by the previous node, null to recover or create the state locally
+     */
+    @JsonCreator
+    public ParkAssignment(@JsonProperty("maxCurrent") final int maxCurrent,
+                          @JsonProperty("highCurrent") final int highCurrent,
+                          @JsonProperty("lowCurrent") final int lowCurrent,
+                          @JsonProperty("chargingPoints") final List<String> chargingPoints,
+                          @JsonProperty("state") final List<ChargingPoint> state) {
+        this.maxCurrent = maxCurrent;
+        this.highCurrent = highCurrent;
+        this.lowCurrent = lowCurrent;
+        this.chargingPoints = checkNotNull(chargingPoints, "chargingPoints must not be null");
+        checkArgument(!chargingPoints.isEmpty(), "chargingPoints must not be empty");
+        this.state = state;
+    }
+
+    /**
+     * Creates the same assignment carrying the given state.
+     *
+     * @param state the CPs as persisted by the previous node, null for none
+     * @return the new assignment
+     */
+    public ParkAssignment withState(final List<ChargingPoint> state) {
+        return new ParkAssignment(maxCurrent, highCurrent, lowCurrent, chargingPoints, state);
+    }
+
+    public int getMaxCurrent() {
+        return maxCurrent;
+    }
+
+    public int getHighCurrent() {
+        return highCurrent;
+    }
+
+    public int getLowCurrent() {
+        return lowCurrent;
+    }
+
+    public List<String> getChargingPoints() {
+        return chargingPoints;
+    }
+
+    public Optional<List<ChargingPoint>> getState() {
+        return Optional.ofNullable(state);
+    }
+}
@@ -0,0 +1,46 @@
+package com.carpark.manager.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An event a CP reports to the application, e.g. that a car was plugged in.
+ */
+public class ParkEvent {
+
+    /**
+     * The kinds of events a CP can report.
+     */
+    public enum Type {
+        PLUG_IN, PLUG_OFF
+    }
+
+    private final Type type;
+    private final String cpName;
+
+    /**
+     * Constructor
+     *
+     * @param type   kind of the event
+     * @param cpName Name of the CP the event belongs to
+     */
+    @JsonCreator
+    public ParkEvent(@JsonProperty("type") final Type type, @JsonProperty("cpName") final String cpName) {
+        this.type = checkNotNull(type, "type must not be null");
+        this.cpName = checkNotNull(cpName, "cpName must not be null");
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getCpName() {
+        return cpName;
+    }
+
+    public String toString() {
+        return type + " " + cpName;
+    }
+}
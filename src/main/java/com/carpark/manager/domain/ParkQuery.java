@@ -0,0 +1,53 @@
+package com.carpark.manager.domain;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Filter for the CPs of the park. Every filter that is not set matches all CPs.
+ */
+public class ParkQuery {
+
+    /**
+     * Whether a car is plugged in at the CP and gets current or waits for it.
+     */
+    public enum Status {
+        AVAILABLE, OCCUPIED, WAITING
+    }
+
+    /**
+     * Whether the CP is allowed to charge fast or slow.
+     */
+    public enum CurrentLevel {
+        HIGH, LOW
+    }
+
+    private final Status status;
+    private final CurrentLevel currentLevel;
+    private final Duration pluggedLongerThan;
+
+    /**
+     * Constructor
+     *
+     * @param status            only CPs with this status, null for all
+     * @param currentLevel      only occupied CPs with this current level, null for all
+     * @param pluggedLongerThan only CPs a car is plugged in at for longer than this, null for all
+     */
+    public ParkQuery(final Status status, final CurrentLevel currentLevel, final Duration pluggedLongerThan) {
+        this.status = status;
+        this.currentLevel = currentLevel;
+        this.pluggedLongerThan = pluggedLongerThan;
+    }
+
+    public Optional<Status> getStatus() {
+        return Optional.ofNullable(status);
+    }
+
+    public Optional<CurrentLevel> getCurrentLevel() {
+        return Optional.ofNullable(currentLevel);
+    }
+
+    public Optional<Duration> getPluggedLongerThan() {
+        return Optional.ofNullable(pluggedLongerThan);
+    }
+}
@@ -0,0 +1,39 @@
+package com.carpark.manager.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A what-if question: which currents would the CPs get if the given events happened now, optionally with a different
+ * max. current.
+ */
+public class SimulationRequest {
+
+    private final Integer maxCurrent;
+    private final List<ParkEvent> events;
+
+    /**
+     * Constructor
+     *
+     * @param maxCurrent max. available current in total in Ampere to simulate with, null to keep the configured one
+     * @param events     hypothetical events to apply in the given order, null for none
+     */
+    @JsonCreator
+    public SimulationRequest(@JsonProperty("maxCurrent") final Integer maxCurrent,
+                             @JsonProperty("events") final List<ParkEvent> events) {
+        this.maxCurrent = maxCurrent;
+        this.events = events == null ? Collections.emptyList() : events;
+    }
+
+    public Optional<Integer> getMaxCurrent() {
+        return Optional.ofNullable(maxCurrent);
+    }
+
+    public List<ParkEvent> getEvents() {
+        return events;
+    }
+}
@@ -0,0 +1,11 @@
+package com.carpark.manager.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class NodeUnavailableException extends RuntimeException {
+    public NodeUnavailableException(final String node, final Throwable cause) {
+        super("Manager node " + node + " is not available", cause);
+    }
+}
@@ -0,0 +1,11 @@
+package com.carpark.manager.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.NOT_FOUND)
+public class ParkNotFoundException extends RuntimeException {
+    public ParkNotFoundException(final String park) {
+        super("Park " + park + " is not hosted by this node");
+    }
+}
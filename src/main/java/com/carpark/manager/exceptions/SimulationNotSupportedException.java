@@ -0,0 +1,11 @@
+package com.carpark.manager.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.NOT_IMPLEMENTED)
+public class SimulationNotSupportedException extends RuntimeException {
+    public SimulationNotSupportedException(final String reason) {
+        super(reason);
+    }
+}
@@ -0,0 +1,45 @@
+package com.carpark.manager.monitoring;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event for writing or reading the persisted state.
+ */
+@Name("com.carpark.manager.Persistence")
+@Label("State Persistence")
+@Category({"Car Park", "Persistence"})
+@Description("Writing or reading the persisted state of the CPs")
+@StackTrace(false)
+public class PersistenceEvent extends Event {
+
+    @Label("Operation")
+    private String operation;
+
+    @Label("Location")
+    private String location;
+
+    @Label("Bytes")
+    @Description("Bytes of the state file, or of the rows written or read for the H2 database")
+    @DataAmount
+    private long bytes;
+
+    @Label("Charging Points")
+    @Description("Number of CPs written or read")
+    private int chargingPoints;
+
+    public void setOperation(final String operation) {
+        this.operation = operation;
+    }
+
+    public void setLocation(final String location) {
+        this.location = location;
+    }
+
+    public void setBytes(final long bytes) {
+        this.bytes = bytes;
+    }
+
+    public void setChargingPoints(final int chargingPoints) {
+        this.chargingPoints = chargingPoints;
+    }
+}
@@ -0,0 +1,61 @@
+package com.carpark.manager.monitoring;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event for the handling of a plug-in or plug-off message, including the time spent waiting for the monitor of
+ * the live state and persisting the new state.
+ */
+@Name("com.carpark.manager.Plug")
+@Label("Plug Message")
+@Category({"Car Park", "Allocation"})
+@Description("Handling of a plug-in or plug-off message of a CP")
+@StackTrace(false)
+public class PlugEvent extends Event {
+
+    @Label("CP")
+    private String cpName;
+
+    @Label("Action")
+    private String action;
+
+    @Label("Wait for Monitor")
+    @Timespan(Timespan.NANOSECONDS)
+    private long waitForMonitor;
+
+    @Label("Throttled CPs")
+    @Description("Number of other CPs that dropped from fast to slow charging")
+    private int throttled;
+
+    @Label("Boosted CPs")
+    @Description("Number of other CPs that rose above slow charging, waiting cars starting to charge excluded")
+    private int boosted;
+
+    @Label("Total Current")
+    @Description("Sum of the currents of all CPs in Ampere after the message was handled")
+    private int totalCurrent;
+
+    public void setCpName(final String cpName) {
+        this.cpName = cpName;
+    }
+
+    public void setAction(final String action) {
+        this.action = action;
+    }
+
+    public void setWaitForMonitor(final long waitForMonitor) {
+        this.waitForMonitor = waitForMonitor;
+    }
+
+    public void setThrottled(final int throttled) {
+        this.throttled = throttled;
+    }
+
+    public void setBoosted(final int boosted) {
+        this.boosted = boosted;
+    }
+
+    public void setTotalCurrent(final int totalCurrent) {
+        this.totalCurrent = totalCurrent;
+    }
+}
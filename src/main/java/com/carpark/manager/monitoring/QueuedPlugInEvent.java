@@ -0,0 +1,37 @@
+package com.carpark.manager.monitoring;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event for a plug-in that was queued because the max. current was not sufficient.
+ */
+@Name("com.carpark.manager.QueuedPlugIn")
+@Label("Queued Plug-in")
+@Category({"Car Park", "Allocation"})
+@Description("A plug-in was queued because the max. current was not sufficient")
+@StackTrace(false)
+public class QueuedPlugInEvent extends Event {
+
+    @Label("CP")
+    private String cpName;
+
+    @Label("Queue Position")
+    @Description("Position of the CP in the waiting queue, starting with 1")
+    private int queuePosition;
+
+    @Label("Total Current")
+    @Description("Sum of the currents of all CPs in Ampere when the plug-in was queued")
+    private int totalCurrent;
+
+    public void setCpName(final String cpName) {
+        this.cpName = cpName;
+    }
+
+    public void setQueuePosition(final int queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+
+    public void setTotalCurrent(final int totalCurrent) {
+        this.totalCurrent = totalCurrent;
+    }
+}
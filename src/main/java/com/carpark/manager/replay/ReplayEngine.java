@@ -0,0 +1,166 @@
+package com.carpark.manager.replay;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.ConsoleAppender;
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.ParkEvent;
+import com.carpark.manager.service.CurrentDistributor;
+import com.carpark.manager.service.ParkIndex;
+import com.carpark.manager.service.WaitingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Feeds a recorded event log through the {@link CurrentDistributor} as fast as possible, without HTTP and without
+ * persisting anything, and writes the resulting allocation timeline. The timestamps are taken from the log and the
+ * plug-in sequence from the position in the log, so replaying the same log always yields the same timeline.
+ * <p>
+ * Every line of the event log has the format {@code <epoch-millis> <PLUG_IN|PLUG_OFF> <cpName>}, empty lines and
+ * lines starting with {@code #} are skipped. For every event one line is written to the timeline with the same three
+ * fields followed by the new current of each CP that changed ({@code CP01=10A}), a plug-in which has to wait because
+ * the max. current was not sufficient gets {@code 0A}. CPs are created when they first occur in the log, whitespace
+ * around their names, e.g. the carriage return of a line ending, is ignored.
+ * <p>
+ * The CPs are kept in a {@link ParkIndex}, so the distributor finds the CPs to throttle or boost in plug-in order
+ * without sorting all CPs for every event.
+ */
+public class ReplayEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplayEngine.class);
+    private final CurrentDistributor distributor;
+    private final ParkIndex index;
+    private final Map<String, ChargingPoint> chargingPoints = new HashMap<>();
+    private final WaitingQueue waitingQueue = new WaitingQueue();
+    private final StringBuilder line = new StringBuilder();
+    private long plugInSequence = 1;
+
+    /**
+     * Constructor
+     *
+     * @param maxCurrent  max. available current in total in Ampere
+     * @param highCurrent max. current per CP in Ampere for fast charging
+     * @param lowCurrent  max. current per CP in Ampere for slow charging
+     */
+    public ReplayEngine(final int maxCurrent, final int highCurrent, final int lowCurrent) {
+        this.distributor = new CurrentDistributor(maxCurrent, highCurrent, lowCurrent);
+        this.index = new ParkIndex(lowCurrent);
+    }
+
+    /**
+     * Replays all events of the given log.
+     *
+     * @param eventLog the recorded events, one per line
+     * @param timeline where to write the allocation timeline to
+     * @return number of replayed events
+     * @throws IOException              if reading the log or writing the timeline fails
+     * @throws IllegalArgumentException if a line of the log is malformed
+     */
+    public long replay(final BufferedReader eventLog, final Writer timeline) throws IOException {
+        checkNotNull(eventLog, "eventLog must not be null");
+        checkNotNull(timeline, "timeline must not be null");
+        long lineNumber = 0;
+        long events = 0;
+        String eventLine;
+        while ((eventLine = eventLog.readLine()) != null) {
+            lineNumber++;
+            if (eventLine.isEmpty() || eventLine.charAt(0) == '#') {
+                continue;
+            }
+            replay(eventLine, lineNumber);
+            timeline.append(line).append('\n');
+            events++;
+        }
+        timeline.flush();
+        return events;
+    }
+
+    /**
+     * Applies a single line of the event log and leaves its timeline entry in {@link #line}.
+     */
+    private void replay(final String eventLine, final long lineNumber) {
+        final int firstSpace = eventLine.indexOf(' ');
+        final int secondSpace = firstSpace < 0 ? -1 : eventLine.indexOf(' ', firstSpace + 1);
+        if (secondSpace < 0) {
+            throw new IllegalArgumentException("Malformed event in line " + lineNumber + ": " + eventLine);
+        }
+        final long timestamp;
+        final ParkEvent.Type type;
+        try {
+            timestamp = Long.parseLong(eventLine.substring(0, firstSpace));
+            type = ParkEvent.Type.valueOf(eventLine.substring(firstSpace + 1, secondSpace));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed event in line " + lineNumber + ": " + eventLine, e);
+        }
+        final String cpName = eventLine.substring(secondSpace + 1).trim();
+        if (cpName.isEmpty()) {
+            throw new IllegalArgumentException("Malformed event in line " + lineNumber + ": " + eventLine);
+        }
+        final ChargingPoint chargingPoint = chargingPoints.computeIfAbsent(cpName, ChargingPoint::new);
+
+        line.setLength(0);
+        line.append(eventLine, 0, secondSpace + 1).append(cpName);
+        final List<ChargingPoint> changed = type == ParkEvent.Type.PLUG_IN
+                ? distributor.plugIn(chargingPoints, waitingQueue, index, chargingPoint, timestamp, plugInSequence++)
+                : distributor.plugOff(chargingPoints, waitingQueue, index, chargingPoint);
+        for (ChargingPoint cp : changed) {
+            line.append(' ').append(cp.getName()).append('=').append(cp.getCurrent()).append('A');
+        }
+    }
+
+    /**
+     * Replays an event log from the command line.
+     *
+     * @param args {@code <event-log> <max-current> <high-current> <low-current> [<timeline-file>]}, the timeline is
+     *             written to stdout if no file is given
+     * @throws IOException if reading the log or writing the timeline fails
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 4 || args.length > 5) {
+            System.err.println("Usage: ReplayEngine <event-log> <max-current> <high-current> <low-current> [<timeline-file>]");
+            System.exit(1);
+        }
+        configureLogging();
+        final ReplayEngine engine = new ReplayEngine(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        try (BufferedReader eventLog = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+             Writer timeline = args.length == 5
+                     ? Files.newBufferedWriter(Paths.get(args[4]), StandardCharsets.UTF_8)
+                     : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+            final long start = System.nanoTime();
+            final long events = engine.replay(eventLog, timeline);
+            final long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            LOGGER.info("Replayed {} events in {}ms ({} events/s)", events, millis, events * 1000 / millis);
+        }
+    }
+
+    /**
+     * Logs to stderr only, as the timeline may be written to stdout, and only warnings besides the summary of the
+     * replay, as per event logging would dominate the replay time.
+     */
+    private static void configureLogging() {
+        final ch.qos.logback.classic.Logger root =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.WARN);
+        ((ch.qos.logback.classic.Logger) LOGGER).setLevel(Level.INFO);
+        for (Iterator<Appender<ch.qos.logback.classic.spi.ILoggingEvent>> appenders = root.iteratorForAppenders();
+             appenders.hasNext(); ) {
+            final Appender<ch.qos.logback.classic.spi.ILoggingEvent> appender = appenders.next();
+            if (appender instanceof ConsoleAppender) {
+                appender.stop();
+                ((ConsoleAppender<ch.qos.logback.classic.spi.ILoggingEvent>) appender).setTarget("System.err");
+                appender.start();
+            }
+        }
+    }
+}
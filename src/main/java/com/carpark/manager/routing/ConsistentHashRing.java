@@ -0,0 +1,75 @@
+package com.carpark.manager.routing;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Maps keys, e.g. park names, to nodes by consistent hashing. Every node is placed on the ring several times, so the
+ * keys spread evenly, and adding a node only moves the keys it takes over from the others. The ring is immutable.
+ */
+public class ConsistentHashRing {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodes;
+    private final int virtualNodes;
+
+    /**
+     * Constructor
+     *
+     * @param nodes        the nodes to map the keys to
+     * @param virtualNodes number of places of each node on the ring
+     */
+    public ConsistentHashRing(final Collection<String> nodes, final int virtualNodes) {
+        checkNotNull(nodes, "nodes must not be null");
+        checkArgument(!nodes.isEmpty(), "nodes must not be empty");
+        checkArgument(virtualNodes > 0, "virtualNodes has to be greater 0");
+        this.nodes = ImmutableSet.copyOf(nodes);
+        this.virtualNodes = virtualNodes;
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * Creates a ring with the given node added.
+     *
+     * @param node the node to add
+     * @return the new ring
+     */
+    public ConsistentHashRing withNode(final String node) {
+        return new ConsistentHashRing(ImmutableSet.<String>builder().addAll(nodes).add(node).build(), virtualNodes);
+    }
+
+    /**
+     * Returns the node the given key is mapped to: the first one on the ring at or after the hash of the key.
+     *
+     * @param key the key to map
+     * @return the node
+     */
+    public String nodeFor(final String key) {
+        final Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    private static long hash(final String key) {
+        return HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+}
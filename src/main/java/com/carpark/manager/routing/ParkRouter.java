@@ -0,0 +1,262 @@
+package com.carpark.manager.routing;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.ParkAssignment;
+import com.carpark.manager.exceptions.CpNotFoundException;
+import com.carpark.manager.exceptions.NodeUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Routes the requests of the CPs to the manager nodes, each park being owned by the node it is mapped to by a
+ * {@link ConsistentHashRing}. A node is told to host a park the first time it gets a request for it, so nodes can be
+ * started and restarted in any order. When a node is added, the parks it takes over are moved one by one: the new owner
+ * hosts the park together with the state read from the previous owner, which recovers the park first if necessary, then
+ * the requests for the park are routed to the new owner, and only then the previous owner releases it. So a failing
+ * node never loses the state of a park.
+ * <p>
+ * The responses of the nodes are passed through unchanged, the {@link RestTemplate} must not treat error statuses as
+ * errors.
+ */
+public class ParkRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParkRouter.class);
+    private static final ParameterizedTypeReference<List<ChargingPoint>> STATE_TYPE =
+            new ParameterizedTypeReference<List<ChargingPoint>>() {
+            };
+    private final RestTemplate restTemplate;
+    private final Map<String, ParkAssignment> parks;
+    private final Map<String, String> parkOfCp = new HashMap<>();
+    // forwarding holds the read lock, moving parks the write lock, so no request reaches a park while it moves
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // the owner of each park, switched park by park while a node is added
+    private final Map<String, String> owners = new ConcurrentHashMap<>();
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * Constructor
+     *
+     * @param restTemplate the client to forward the requests with
+     * @param parks        the configuration of each park by its name
+     * @param ring         maps the parks to the nodes
+     * @throws IllegalArgumentException if a CP belongs to more than one park
+     */
+    public ParkRouter(final RestTemplate restTemplate, final Map<String, ParkAssignment> parks, final ConsistentHashRing ring) {
+        this.restTemplate = checkNotNull(restTemplate, "restTemplate must not be null");
+        this.parks = new TreeMap<>(checkNotNull(parks, "parks must not be null"));
+        this.ring = checkNotNull(ring, "ring must not be null");
+        parks.forEach((park, assignment) -> assignment.getChargingPoints().forEach(cpName -> {
+            final String previous = parkOfCp.put(cpName, park);
+            checkArgument(previous == null, "CP %s belongs to park %s and %s", cpName, previous, park);
+        }));
+        parks.keySet().forEach(park -> owners.put(park, ring.nodeFor(park)));
+    }
+
+    public ResponseEntity<String> plugIn(final String cpName) {
+        return forward(parkOf(cpName), HttpMethod.PUT, "/cp/plugin/" + cpName);
+    }
+
+    public ResponseEntity<String> plugOff(final String cpName) {
+        return forward(parkOf(cpName), HttpMethod.PUT, "/cp/plugoff/" + cpName);
+    }
+
+    public ResponseEntity<String> getAllowedCurrent(final String cpName) {
+        return forward(parkOf(cpName), HttpMethod.GET, "/cp/current/" + cpName);
+    }
+
+    /**
+     * Collects the reports of all parks from their nodes.
+     *
+     * @return the CPs of all parks, one per line, sorted by name like the report of a single park
+     * @throws NodeUnavailableException if the node of a park is not available or fails to report
+     */
+    public String getReport() {
+        final List<String> lines = new ArrayList<>();
+        for (String park : parks.keySet()) {
+            final ResponseEntity<String> report = forward(park, HttpMethod.GET, "/report");
+            if (!report.getStatusCode().is2xxSuccessful()) {
+                throw new NodeUnavailableException(owners.get(park), new IllegalStateException(
+                        "Report of park " + park + " failed with " + report.getStatusCode()));
+            }
+            if (report.getBody() != null) {
+                lines.addAll(Arrays.asList(report.getBody().split("\n")));
+            }
+        }
+        final StringBuilder sb = new StringBuilder();
+        lines.stream().filter(line -> !line.isEmpty()).sorted(Comparator.comparing(ParkRouter::cpNameOf))
+                .forEach(line -> sb.append(line).append("\n"));
+        return sb.toString();
+    }
+
+    private static String cpNameOf(final String reportLine) {
+        final int space = reportLine.indexOf(' ');
+        return space < 0 ? reportLine : reportLine.substring(0, space);
+    }
+
+    /**
+     * @return the node owning each park by the name of the park
+     */
+    public Map<String, String> getOwners() {
+        return new TreeMap<>(owners);
+    }
+
+    /**
+     * Adds a node and moves the parks it takes over from their previous owners together with their state. Requests
+     * for any park wait until the parks are moved.
+     *
+     * @param node base URL of the node, e.g. {@code http://localhost:8083}
+     * @return the new owner of each moved park by the name of the park
+     * @throws NodeUnavailableException if one of the nodes involved is not available, the parks moved so far stay
+     *                                  with their new owner and the others with their previous one then, adding the
+     *                                  node again moves the rest
+     */
+    public Map<String, String> addNode(final String node) {
+        lock.writeLock().lock();
+        try {
+            if (ring.getNodes().contains(node)) {
+                return Collections.emptyMap();
+            }
+            final ConsistentHashRing newRing = ring.withNode(node);
+            final Map<String, String> moved = new TreeMap<>();
+            for (String park : parks.keySet()) {
+                final String previousOwner = owners.get(park);
+                final String newOwner = newRing.nodeFor(park);
+                if (!previousOwner.equals(newOwner)) {
+                    move(park, previousOwner, newOwner);
+                    moved.put(park, newOwner);
+                }
+            }
+            ring = newRing;
+            return moved;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a park in two phases: the new owner hosts it with the state of the previous owner before the park is routed
+     * to it, and the previous owner only releases the park afterwards. If hosting fails, the previous owner still has
+     * the park and its state untouched. If the previous owner does not host the park, e.g. as it restarted since the
+     * last request for the park, it is told to host it first, so it recovers the persisted state to hand over.
+     */
+    private void move(final String park, final String previousOwner, final String newOwner) {
+        List<ChargingPoint> state = readState(previousOwner, park);
+        if (state == null) {
+            host(previousOwner, park, parks.get(park));
+            state = readState(previousOwner, park);
+            if (state == null) {
+                throw new NodeUnavailableException(previousOwner, new IllegalStateException(
+                        "Park " + park + " is not hosted after hosting it"));
+            }
+        }
+        host(newOwner, park, parks.get(park).withState(state));
+        owners.put(park, newOwner);
+        try {
+            release(previousOwner, park);
+        } catch (NodeUnavailableException e) {
+            // the park is already routed to its new owner, the copy left behind gets no more requests
+            LOGGER.warn("Moved park {} to {}, but {} failed to release it", park, newOwner, previousOwner, e);
+            return;
+        }
+        LOGGER.info("Moved park {} from {} to {}", park, previousOwner, newOwner);
+    }
+
+    private String parkOf(final String cpName) {
+        final String park = parkOfCp.get(cpName);
+        if (park == null) {
+            LOGGER.error("CP {} is not configured", cpName);
+            throw new CpNotFoundException(cpName);
+        }
+        return park;
+    }
+
+    /**
+     * Forwards a request to the node owning the park. If the node does not host the park yet, it is told to host it
+     * and the request is repeated.
+     */
+    private ResponseEntity<String> forward(final String park, final HttpMethod method, final String path) {
+        lock.readLock().lock();
+        try {
+            final String node = owners.get(park);
+            final String url = node + "/parks/" + park + path;
+            ResponseEntity<String> response = call(node, () -> restTemplate.exchange(url, method, HttpEntity.EMPTY, String.class));
+            if (response.getStatusCode() == HttpStatus.NOT_FOUND) {
+                host(node, park, parks.get(park));
+                response = call(node, () -> restTemplate.exchange(url, method, HttpEntity.EMPTY, String.class));
+            }
+            return response;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void host(final String node, final String park, final ParkAssignment assignment) {
+        final ResponseEntity<String> response = call(node, () -> restTemplate.exchange(node + "/parks/" + park,
+                HttpMethod.PUT, new HttpEntity<>(assignment), String.class));
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new NodeUnavailableException(node, new IllegalStateException(
+                    "Hosting park " + park + " failed with " + response.getStatusCode() + ": " + response.getBody()));
+        }
+    }
+
+    /**
+     * Reads the state of the park from the node without releasing it.
+     *
+     * @return the state of the park or null if the node does not host it
+     */
+    private List<ChargingPoint> readState(final String node, final String park) {
+        final ResponseEntity<List<ChargingPoint>> response = call(node, () -> restTemplate.exchange(
+                node + "/parks/" + park, HttpMethod.GET, HttpEntity.EMPTY, STATE_TYPE));
+        if (response.getStatusCode() == HttpStatus.NOT_FOUND) {
+            return null;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new NodeUnavailableException(node, new IllegalStateException(
+                    "Reading the state of park " + park + " failed with " + response.getStatusCode()));
+        }
+        return response.getBody();
+    }
+
+    /**
+     * Releases the park from the node.
+     *
+     * @return the state of the park or null if the node did not host it
+     */
+    private List<ChargingPoint> release(final String node, final String park) {
+        final ResponseEntity<List<ChargingPoint>> response = call(node, () -> restTemplate.exchange(
+                node + "/parks/" + park, HttpMethod.DELETE, HttpEntity.EMPTY, STATE_TYPE));
+        if (response.getStatusCode() == HttpStatus.NOT_FOUND) {
+            return null;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new NodeUnavailableException(node, new IllegalStateException(
+                    "Releasing park " + park + " failed with " + response.getStatusCode()));
+        }
+        return response.getBody();
+    }
+
+    private static <T> T call(final String node, final Supplier<T> request) {
+        try {
+            return request.get();
+        } catch (ResourceAccessException e) {
+            LOGGER.error("Node {} is not available", node, e);
+            throw new NodeUnavailableException(node, e);
+        }
+    }
+}
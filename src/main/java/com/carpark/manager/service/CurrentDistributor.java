@@ -0,0 +1,379 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.google.common.collect.Iterables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Distributes the available current among a set of CPs. It gives those CPs which have a car plugged in later a higher
+ * priority, trying to give the most possible CPs the current for fast charging. It holds no state of its own, so the
+ * same instance can be applied to the live state as well as to copies of it.
+ * <p>
+ * Whether there is room for fast charging is decided by the current reserved for each CP, which is its allowed current
+ * unless a reserved current function tells otherwise, e.g. from the actual draw of the car. A car only gets current
+ * if all cars could charge with the slow charging current at least, otherwise it is queued in a {@link WaitingQueue}
+ * with 0A until a plug-off frees enough current.
+ * <p>
+ * Plug-ins and plug-offs can be given a {@link ParkIndex} of the CPs, which is then kept up to date with every change.
+ * Unless a reserved current function is given, the sums and orderings are taken from the index instead of from all CPs,
+ * so the cost of an event depends on the number of CPs whose current changes rather than on the size of the park.
+ */
+public class CurrentDistributor {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CurrentDistributor.class);
+    private final static ToIntFunction<ChargingPoint> ALLOWED_CURRENT = ChargingPoint::getCurrent;
+    private final int highCurrent;
+    private final int lowCurrent;
+    private final int maxCurrent;
+    private final ToIntFunction<ChargingPoint> reservedCurrent;
+
+    /**
+     * Constructor
+     *
+     * @param maxCurrent  max. available current in total in Ampere
+     * @param highCurrent max. current per CP in Ampere for fast charging
+     * @param lowCurrent  max. current per CP in Ampere for slow charging
+     */
+    public CurrentDistributor(final int maxCurrent, final int highCurrent, final int lowCurrent) {
+        this(maxCurrent, highCurrent, lowCurrent, ALLOWED_CURRENT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxCurrent      max. available current in total in Ampere
+     * @param highCurrent     max. current per CP in Ampere for fast charging
+     * @param lowCurrent      max. current per CP in Ampere for slow charging
+     * @param reservedCurrent current in Ampere to reserve for a plugged CP, at most its allowed current
+     */
+    public CurrentDistributor(final int maxCurrent, final int highCurrent, final int lowCurrent,
+                              final ToIntFunction<ChargingPoint> reservedCurrent) {
+        checkArgument(maxCurrent > 0, "maxCurrent has to be greater 0");
+        checkArgument(highCurrent > 0, "highCurrent has to be greater 0");
+        checkArgument(lowCurrent > 0, "lowCurrent has to be greater 0");
+        checkArgument(highCurrent > lowCurrent, "highCurrent has to be greater than lowCurrent");
+        this.maxCurrent = maxCurrent;
+        this.highCurrent = highCurrent;
+        this.lowCurrent = lowCurrent;
+        this.reservedCurrent = checkNotNull(reservedCurrent, "reservedCurrent must not be null");
+    }
+
+    /**
+     * Creates a distributor with the same settings but another max. current.
+     *
+     * @param maxCurrent max. available current in total in Ampere
+     * @return the new distributor
+     */
+    public CurrentDistributor withMaxCurrent(final int maxCurrent) {
+        return new CurrentDistributor(maxCurrent, highCurrent, lowCurrent, reservedCurrent);
+    }
+
+    /**
+     * @return true if room for fast charging is decided by the reserved currents rather than the allowed ones, so the
+     * allowances can exceed the max. current and fast charging is clawed back as soon as the cars draw more
+     */
+    public boolean isReclaimingHeadroom() {
+        return reservedCurrent != ALLOWED_CURRENT;
+    }
+
+    public int getMaxCurrent() {
+        return maxCurrent;
+    }
+
+    public int getHighCurrent() {
+        return highCurrent;
+    }
+
+    public int getLowCurrent() {
+        return lowCurrent;
+    }
+
+    /**
+     * Plugs in the given CP redistributing the currents if necessary. If the max. current is not sufficient for
+     * another car, the CP gets 0A and is queued. Does nothing if the CP is already plugged.
+     *
+     * @param chargingPoints all CPs sharing the available current
+     * @param waitingQueue   the cars waiting for current
+     * @param chargingPoint  the CP to plug in
+     * @param timestamp      time of the plug-in in milliseconds since the epoch
+     * @param sequence       monotonic number of the plug-in to order plug-ins of the same millisecond
+     * @return the CPs whose current changed, starting with the plugged in one
+     */
+    public List<ChargingPoint> plugIn(final Map<String, ChargingPoint> chargingPoints, final WaitingQueue waitingQueue,
+                                      final ChargingPoint chargingPoint, final long timestamp, final long sequence) {
+        return plugIn(chargingPoints, waitingQueue, null, chargingPoint, timestamp, sequence);
+    }
+
+    /**
+     * Plugs in the given CP redistributing the currents if necessary, see
+     * {@link #plugIn(Map, WaitingQueue, ChargingPoint, long, long)}.
+     *
+     * @param chargingPoints all CPs sharing the available current
+     * @param waitingQueue   the cars waiting for current
+     * @param index          index of all CPs which is kept up to date, null for none
+     * @param chargingPoint  the CP to plug in
+     * @param timestamp      time of the plug-in in milliseconds since the epoch
+     * @param sequence       monotonic number of the plug-in to order plug-ins of the same millisecond
+     * @return the CPs whose current changed, starting with the plugged in one
+     */
+    public List<ChargingPoint> plugIn(final Map<String, ChargingPoint> chargingPoints, final WaitingQueue waitingQueue,
+                                      final ParkIndex index, final ChargingPoint chargingPoint, final long timestamp,
+                                      final long sequence) {
+        final List<ChargingPoint> changed = new ArrayList<>();
+        if (!chargingPoint.isPlugged()) {
+            changed.add(chargingPoint);
+
+            if (minimalCurrentSum(chargingPoints, index) + lowCurrent > maxCurrent) {
+                LOGGER.info("Max current not sufficient, {} has to wait", chargingPoint.getName());
+                chargingPoint.setCurrent(0);
+                chargingPoint.plugIn(timestamp, sequence);
+                waitingQueue.add(chargingPoint);
+                update(index, chargingPoint);
+                return changed;
+            }
+
+            throttleByLoadingTime(chargingPoints, index, highCurrent, changed);
+
+            chargingPoint.setCurrent(reservedSum(chargingPoints, index) + highCurrent <= maxCurrent ? highCurrent : lowCurrent);
+            chargingPoint.plugIn(timestamp, sequence);
+            update(index, chargingPoint);
+        }
+        return changed;
+    }
+
+    /**
+     * Plugs off the given CP redistributing the currents if possible: the car waiting the longest time gets the
+     * current freed first, then the remaining current is used for fast charging. Does nothing if the CP is not plugged.
+     *
+     * @param chargingPoints all CPs sharing the available current
+     * @param waitingQueue   the cars waiting for current
+     * @param chargingPoint  the CP to plug off
+     * @return the CPs whose current changed, starting with the plugged off one
+     */
+    public List<ChargingPoint> plugOff(final Map<String, ChargingPoint> chargingPoints, final WaitingQueue waitingQueue,
+                                       final ChargingPoint chargingPoint) {
+        return plugOff(chargingPoints, waitingQueue, null, chargingPoint);
+    }
+
+    /**
+     * Plugs off the given CP redistributing the currents if possible, see
+     * {@link #plugOff(Map, WaitingQueue, ChargingPoint)}.
+     *
+     * @param chargingPoints all CPs sharing the available current
+     * @param waitingQueue   the cars waiting for current
+     * @param index          index of all CPs which is kept up to date, null for none
+     * @param chargingPoint  the CP to plug off
+     * @return the CPs whose current changed, starting with the plugged off one
+     */
+    public List<ChargingPoint> plugOff(final Map<String, ChargingPoint> chargingPoints, final WaitingQueue waitingQueue,
+                                       final ParkIndex index, final ChargingPoint chargingPoint) {
+        final List<ChargingPoint> changed = new ArrayList<>();
+        if (chargingPoint.isPlugged()) {
+            if (chargingPoint.isWaiting()) {
+                waitingQueue.remove(chargingPoint);
+            }
+            chargingPoint.plugOff();
+            update(index, chargingPoint);
+            changed.add(chargingPoint);
+            promoteWaiting(chargingPoints, waitingQueue, index, changed);
+            // set the youngest CPs to fast charging if possible
+            boostByLoadingTime(chargingPoints, index, changed);
+        }
+        return changed;
+    }
+
+    /**
+     * Redistributes the currents after the reserved currents changed: throttles the CPs which are loading the longest
+     * time as long as more current is reserved than available and boosts CPs if there is room again.
+     *
+     * @param chargingPoints all CPs sharing the available current
+     * @return the CPs whose current changed
+     */
+    public List<ChargingPoint> rebalance(final Map<String, ChargingPoint> chargingPoints) {
+        final List<ChargingPoint> changed = new ArrayList<>();
+        throttleByLoadingTime(chargingPoints, null, 0, changed);
+        boostByLoadingTime(chargingPoints, null, changed);
+        return changed;
+    }
+
+    /**
+     * Redistributes the currents from scratch under the max. current of this distributor, e.g. on a copy of the state
+     * taken under another max. current: queues the cars plugged in last as long as not all cars could charge with the
+     * slow charging current, promotes waiting cars if there is room, throttles the cars loading the longest time as
+     * long as more current is reserved than available and boosts the cars plugged in last.
+     *
+     * @param chargingPoints all CPs sharing the available current
+     * @param waitingQueue   the cars waiting for current
+     * @return the CPs whose current changed
+     */
+    public List<ChargingPoint> redistribute(final Map<String, ChargingPoint> chargingPoints, final WaitingQueue waitingQueue) {
+        final List<ChargingPoint> changed = new ArrayList<>();
+        int minimalCurrentSum = minimalCurrentSum(chargingPoints, null);
+        if (minimalCurrentSum > maxCurrent) {
+            final List<ChargingPoint> chargingPointsSortedByAgeDescending = chargingPoints.values().stream()
+                    .filter(cp -> cp.isPlugged() && !cp.isWaiting())
+                    .sorted(ChargingPoint.BY_PLUG_IN_ORDER.reversed())
+                    .collect(Collectors.toList());
+            for (ChargingPoint cp : chargingPointsSortedByAgeDescending) {
+                if (minimalCurrentSum <= maxCurrent) {
+                    break;
+                }
+                LOGGER.debug("Max current not sufficient, {} has to wait", cp.getName());
+                minimalCurrentSum -= Math.min(cp.getCurrent(), lowCurrent);
+                cp.setCurrent(0);
+                waitingQueue.add(cp);
+                changed.add(cp);
+            }
+        }
+        promoteWaiting(chargingPoints, waitingQueue, null, changed);
+        throttleByLoadingTime(chargingPoints, null, 0, changed);
+        boostByLoadingTime(chargingPoints, null, changed);
+        return changed;
+    }
+
+    /**
+     * Gives the cars waiting the longest time slow charging current as long as all cars could charge with it.
+     */
+    private void promoteWaiting(final Map<String, ChargingPoint> chargingPoints, final WaitingQueue waitingQueue,
+                                final ParkIndex index, final List<ChargingPoint> changed) {
+        if (waitingQueue.isEmpty()) {
+            return;
+        }
+        int minimalCurrentSum = minimalCurrentSum(chargingPoints, index);
+        while (!waitingQueue.isEmpty() && minimalCurrentSum + lowCurrent <= maxCurrent) {
+            final ChargingPoint cp = waitingQueue.pollFirst();
+            LOGGER.info("Promoting waiting {} to {}A", cp.getName(), lowCurrent);
+            cp.setCurrent(lowCurrent);
+            update(index, cp);
+            minimalCurrentSum += lowCurrent;
+            changed.add(cp);
+        }
+    }
+
+    /**
+     * Sets the current of CPs which are loading the longest time to slow charging current.
+     */
+    private void throttleByLoadingTime(final Map<String, ChargingPoint> chargingPoints, final ParkIndex index,
+                                       final int requiredCurrent, final List<ChargingPoint> changed) {
+        int reservedSum = reservedSum(chargingPoints, index);
+        if (reservedSum + requiredCurrent <= maxCurrent) {
+            return;
+        }
+        // order plugged CPs by charging time ascending, skipping those whose cars draw no more than the low current anyway
+        final Iterable<ChargingPoint> chargingPointsSortedByAge = isIndexed(index)
+                ? live(chargingPoints, index.getFastInPlugInOrder())
+                : chargingPoints.values().stream()
+                .filter(cp -> cp.isPlugged() && cp.getCurrent() > lowCurrent && reservedCurrent.applyAsInt(cp) > lowCurrent)
+                .sorted(ChargingPoint.BY_PLUG_IN_ORDER)
+                .collect(Collectors.toList());
+
+        for (ChargingPoint cp : chargingPointsSortedByAge) {
+            if (reservedSum + requiredCurrent > maxCurrent) {
+                LOGGER.debug("Throttling {} to {}A", cp.getName(), lowCurrent);
+                reservedSum -= reservedCurrent.applyAsInt(cp);
+                cp.setCurrent(lowCurrent);
+                update(index, cp);
+                reservedSum += reservedCurrent.applyAsInt(cp);
+                changed.add(cp);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sets then current of CPs which are loading the shortest time to high charging current.
+     */
+    private void boostByLoadingTime(final Map<String, ChargingPoint> chargingPoints, final ParkIndex index,
+                                    final List<ChargingPoint> changed) {
+        int reservedSum = reservedSum(chargingPoints, index);
+        // without metered currents each boost raises the sum by exactly the difference between high and low current
+        if (reservedCurrent == ALLOWED_CURRENT && reservedSum - lowCurrent + highCurrent > maxCurrent) {
+            return;
+        }
+        // order plugged CPs by charging time descending
+        final Iterable<ChargingPoint> chargingPointsSortedByAge = isIndexed(index)
+                ? live(chargingPoints, index.getSlowInPlugInOrder())
+                : chargingPoints.values().stream()
+                .filter(cp -> cp.isPlugged() && !cp.isWaiting() && cp.getCurrent() < highCurrent)
+                .sorted(ChargingPoint.BY_PLUG_IN_ORDER)
+                .collect(Collectors.toList());
+
+        for (ChargingPoint cp : chargingPointsSortedByAge) {
+            final int reservedBefore = reservedCurrent.applyAsInt(cp);
+            final int currentBefore = cp.getCurrent();
+            cp.setCurrent(highCurrent);
+            final int reservedAfter = reservedCurrent.applyAsInt(cp);
+            if (reservedSum - reservedBefore + reservedAfter <= maxCurrent) {
+                LOGGER.info("Boosting {} to {}A", cp.getName(), highCurrent);
+                update(index, cp);
+                reservedSum += reservedAfter - reservedBefore;
+                changed.add(cp);
+            } else {
+                cp.setCurrent(currentBefore);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sum of the currents if all plugged CPs were throttled to slow charging current.
+     */
+    private int minimalCurrentSum(final Map<String, ChargingPoint> chargingPoints, final ParkIndex index) {
+        if (index != null) {
+            return index.getMinimalCurrent();
+        }
+        int sum = 0;
+        for (ChargingPoint cp : chargingPoints.values()) {
+            if (cp.isPlugged()) {
+                sum += Math.min(cp.getCurrent(), lowCurrent);
+            }
+        }
+        return sum;
+    }
+
+    private int reservedSum(final Map<String, ChargingPoint> chargingPoints, final ParkIndex index) {
+        if (isIndexed(index)) {
+            return index.getTotalCurrent();
+        }
+        int sum = 0;
+        for (ChargingPoint cp : chargingPoints.values()) {
+            if (cp.isPlugged()) {
+                sum += reservedCurrent.applyAsInt(cp);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Whether the reserved currents can be taken from the index, which only knows the allowed currents.
+     */
+    private boolean isIndexed(final ParkIndex index) {
+        return index != null && reservedCurrent == ALLOWED_CURRENT;
+    }
+
+    private static void update(final ParkIndex index, final ChargingPoint chargingPoint) {
+        if (index != null) {
+            index.update(chargingPoint);
+        }
+    }
+
+    /**
+     * The live CPs of the given indexed copies. The index may change while iterating, as the CPs are updated when
+     * their current changes.
+     */
+    private static Iterable<ChargingPoint> live(final Map<String, ChargingPoint> chargingPoints,
+                                                final Iterable<ChargingPoint> indexed) {
+        return Iterables.transform(indexed, copy -> chargingPoints.get(copy.getName()));
+    }
+}
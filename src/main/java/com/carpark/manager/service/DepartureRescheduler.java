@@ -0,0 +1,28 @@
+package com.carpark.manager.service;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Regularly reschedules the currents by the demands of the drivers, so a car falling behind its departure gets fast
+ * charging and a car that will get its energy in time anyway hands it on.
+ */
+public class DepartureRescheduler {
+
+    private final RequestHandler requestHandler;
+
+    /**
+     * Constructor
+     *
+     * @param requestHandler the handler to reschedule
+     */
+    public DepartureRescheduler(final RequestHandler requestHandler) {
+        this.requestHandler = checkNotNull(requestHandler, "requestHandler must not be null");
+    }
+
+    @Scheduled(fixedDelayString = "${scheduling.reschedule-interval-millis:60000}")
+    public void reschedule() {
+        requestHandler.reschedule();
+    }
+}
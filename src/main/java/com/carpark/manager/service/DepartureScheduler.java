@@ -0,0 +1,215 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingDemand;
+import com.carpark.manager.domain.ChargingPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Assigns the fast charging current by the demands of the drivers instead of the plug-in order, so that as much of
+ * the requested energy as possible is delivered before the cars leave. The number of fast charging CPs follows from the
+ * max. current, as every admitted car keeps at least the slow charging current. The slots go, in this order:
+ * <ol>
+ * <li>to the cars which would not get their energy before departure with the slow charging current, earliest
+ * departure first, as the others can still be served later</li>
+ * <li>to the cars without a departure time which still need energy, latest plug-in first like the plug-in order
+ * policy</li>
+ * <li>to the cars which get their energy in time anyway, have it already or are overdue, earliest departure first</li>
+ * </ol>
+ * The delivered energy is estimated from the allowed currents. The cars are kept ordered by departure and by plug-in
+ * as they plug in and off, so solving is a single pass over the plugged cars without sorting. Not thread safe, it is
+ * guarded by the monitor of the {@link RequestHandler}.
+ */
+public class DepartureScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DepartureScheduler.class);
+    private static final double MILLIS_PER_HOUR = 3_600_000d;
+    private final double wattsPerAmpere;
+    private final Map<String, Car> cars = new HashMap<>();
+    private final NavigableSet<Car> byDeparture = new TreeSet<>(Comparator
+            .comparingLong((Car car) -> car.departureTimestamp)
+            .thenComparing(car -> car.chargingPoint.getName()));
+    // latest plug-in first, like the plug-in order policy
+    private final NavigableSet<Car> byPlugIn = new TreeSet<>(Comparator
+            .comparingLong((Car car) -> car.plugInTimestamp)
+            .thenComparingLong(car -> car.plugInSequence)
+            .thenComparing(car -> car.chargingPoint.getName())
+            .reversed());
+
+    /**
+     * Constructor
+     *
+     * @param wattsPerAmpere power in Watt a car charges with per Ampere of allowed current, e.g. 690 for three phases
+     *                       of 230V
+     */
+    public DepartureScheduler(final double wattsPerAmpere) {
+        checkArgument(wattsPerAmpere > 0, "wattsPerAmpere has to be greater 0");
+        this.wattsPerAmpere = wattsPerAmpere;
+    }
+
+    /**
+     * Starts scheduling a plugged CP, replacing the demand it had before.
+     *
+     * @param chargingPoint the plugged CP, also if it is waiting for current
+     * @param demand        what its driver needs
+     * @param timestamp     time from which on the energy is counted in milliseconds since the epoch
+     */
+    public void plugIn(final ChargingPoint chargingPoint, final ChargingDemand demand, final long timestamp) {
+        checkNotNull(demand, "demand must not be null");
+        checkArgument(chargingPoint.isPlugged(), "%s is not plugged", chargingPoint.getName());
+        plugOff(chargingPoint.getName());
+        final Car car = new Car(chargingPoint, demand, timestamp);
+        cars.put(chargingPoint.getName(), car);
+        if (demand.getDepartureTimestamp().isPresent()) {
+            byDeparture.add(car);
+        } else {
+            byPlugIn.add(car);
+        }
+        LOGGER.debug("Scheduling {} for {}", chargingPoint.getName(), demand);
+    }
+
+    /**
+     * Stops scheduling a CP. Does nothing if it is not scheduled.
+     *
+     * @param cpName Name of the CP
+     */
+    public void plugOff(final String cpName) {
+        final Car car = cars.remove(cpName);
+        if (car != null) {
+            byDeparture.remove(car);
+            byPlugIn.remove(car);
+        }
+    }
+
+    /**
+     * Returns the energy charged at the given CP since it plugged in, as of the last {@link #solve}.
+     *
+     * @param cpName Name of the CP
+     * @return the energy in kWh, 0 if the CP is not scheduled
+     */
+    public double getDeliveredKwh(final String cpName) {
+        final Car car = cars.get(cpName);
+        return car == null ? 0 : car.deliveredWh / 1000;
+    }
+
+    /**
+     * Counts the energy charged since the last call and reassigns the fast charging current to the admitted cars.
+     *
+     * @param distributor the distributor defining the currents
+     * @param timestamp   the actual time in milliseconds since the epoch
+     * @return the CPs whose current differs from the one after the last call or their plug-in, so changes the
+     * distributor made in between and this call undid are not reported
+     */
+    public List<ChargingPoint> solve(final CurrentDistributor distributor, final long timestamp) {
+        final int highCurrent = distributor.getHighCurrent();
+        final int lowCurrent = distributor.getLowCurrent();
+        int admitted = 0;
+        for (Car car : cars.values()) {
+            car.count(timestamp, wattsPerAmpere);
+            if (!car.chargingPoint.isWaiting()) {
+                admitted++;
+            }
+        }
+        int slots = Math.min(admitted, Math.max(0, (distributor.getMaxCurrent() - admitted * lowCurrent) / (highCurrent - lowCurrent)));
+
+        final Set<Car> fast = new HashSet<>();
+        final List<Car> served = new ArrayList<>();
+        for (Car car : byDeparture) {
+            if (car.chargingPoint.isWaiting()) {
+                continue;
+            }
+            final double lowDeliverableWh = lowCurrent * wattsPerAmpere * (car.departureTimestamp - timestamp) / MILLIS_PER_HOUR;
+            if (slots > 0 && car.departureTimestamp > timestamp && car.remainingWh() > lowDeliverableWh) {
+                fast.add(car);
+                slots--;
+            } else {
+                served.add(car);
+            }
+        }
+        for (Car car : byPlugIn) {
+            if (slots == 0) {
+                break;
+            }
+            if (!car.chargingPoint.isWaiting() && car.remainingWh() > 0) {
+                fast.add(car);
+                slots--;
+            }
+        }
+        for (Car car : served) {
+            if (slots == 0) {
+                break;
+            }
+            fast.add(car);
+            slots--;
+        }
+        for (Car car : byPlugIn) {
+            if (slots == 0) {
+                break;
+            }
+            if (!car.chargingPoint.isWaiting() && fast.add(car)) {
+                slots--;
+            }
+        }
+
+        final List<ChargingPoint> changed = new ArrayList<>();
+        for (Car car : cars.values()) {
+            final ChargingPoint cp = car.chargingPoint;
+            if (!cp.isWaiting()) {
+                cp.setCurrent(fast.contains(car) ? highCurrent : lowCurrent);
+            }
+            if (cp.getCurrent() != car.current) {
+                LOGGER.debug("Scheduling {} with {}A", cp.getName(), cp.getCurrent());
+                car.current = cp.getCurrent();
+                changed.add(cp);
+            }
+        }
+        return changed;
+    }
+
+    private static final class Car {
+
+        private final ChargingPoint chargingPoint;
+        private final double targetWh;
+        private final long departureTimestamp;
+        private final long plugInTimestamp;
+        private final long plugInSequence;
+        private double deliveredWh;
+        private long countedUntil;
+        private int current;
+
+        private Car(final ChargingPoint chargingPoint, final ChargingDemand demand, final long timestamp) {
+            this.chargingPoint = chargingPoint;
+            this.targetWh = demand.getEnergyKwh().map(kwh -> kwh * 1000).orElse(Double.POSITIVE_INFINITY);
+            this.departureTimestamp = demand.getDepartureTimestamp().orElse(Long.MAX_VALUE);
+            // the plug-in order must not change while the car is in the sets, even if the CP is reset
+            this.plugInTimestamp = chargingPoint.getPlugInTimestamp();
+            this.plugInSequence = chargingPoint.getPlugInSequence();
+            this.countedUntil = timestamp;
+            this.current = chargingPoint.getCurrent();
+        }
+
+        private void count(final long timestamp, final double wattsPerAmpere) {
+            if (timestamp > countedUntil) {
+                deliveredWh += current * wattsPerAmpere * (timestamp - countedUntil) / MILLIS_PER_HOUR;
+                countedUntil = timestamp;
+            }
+        }
+
+        private double remainingWh() {
+            return targetWh - deliveredWh;
+        }
+    }
+}
@@ -1,22 +1,30 @@
 package com.carpark.manager.service;
 
 import com.carpark.manager.domain.ChargingPoint;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.carpark.manager.monitoring.PersistenceEvent;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CountingOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.nio.file.StandardOpenOption.*;
 
 /**
@@ -26,8 +34,11 @@ public class FileSystemPersister implements StatePersister {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemPersister.class);
     private static final String FILE_NAME = "state.json";
+    private static final String TEMPORARY_FILE_NAME = FILE_NAME + ".tmp";
     private final Path directoryPath;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .disable(DeserializationFeature.ACCEPT_FLOAT_AS_INT);
 
     /**
      * Constructor
@@ -39,32 +50,98 @@ public class FileSystemPersister implements StatePersister {
         this.directoryPath = checkNotNull(directoryPath, "directoryPath must not be null");
     }
 
+    /**
+     * Reads the state file CP by CP straight into the map of CPs, so no intermediate list or tree of the whole file is
+     * built and the peak heap stays close to the size of the recovered state itself. Unknown fields are skipped and
+     * missing ones keep the defaults of a free CP, but values of the wrong type fail the read.
+     *
+     * @throws IllegalStateException if the state file exists, but is corrupt or truncated
+     */
     @Override
     public Optional<Map<String, ChargingPoint>> readState() {
         final File file = directoryPath.resolve(FILE_NAME).toFile();
         if (file.exists()) {
             LOGGER.info("Found existing state file at {}", file.getAbsolutePath());
-            try {
-                final List<ChargingPoint> cpList = objectMapper.readValue(file, new TypeReference<List<ChargingPoint>>() {
-                });
-                return Optional.of(cpList.stream().collect(Collectors.toMap(ChargingPoint::getName, cp -> cp)));
+            final PersistenceEvent event = new PersistenceEvent();
+            event.begin();
+            final Map<String, ChargingPoint> chargingPoints = new HashMap<>(expectedSize(file.length()));
+            try (JsonParser parser = objectMapper.getFactory().createParser(file)) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new JsonParseException(parser, "State file has to contain an array of CPs");
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    final ChargingPoint chargingPoint = objectMapper.readValue(parser, ChargingPoint.class);
+                    if (chargingPoint.getName() == null) {
+                        throw new JsonParseException(parser, "CP without name in state file");
+                    }
+                    chargingPoints.put(chargingPoint.getName(), chargingPoint);
+                }
+                if (parser.currentToken() != JsonToken.END_ARRAY || parser.nextToken() != null) {
+                    throw new JsonParseException(parser, "State file has to contain an array of CPs only");
+                }
+                return Optional.of(chargingPoints);
             } catch (IOException e) {
-                LOGGER.error("Could not read state file {}", file.getAbsolutePath(), e);
+                throw new IllegalStateException("Could not read state file " + file.getAbsolutePath(), e);
+            } finally {
+                commit(event, "readState", file.toPath(), file.length(), chargingPoints.size());
             }
         }
         LOGGER.info("No state file found at {}", file.getAbsolutePath());
         return Optional.empty();
     }
 
+    /**
+     * Estimates the capacity of the map from the size of the state file to avoid rehashing while reading it. A
+     * compactly written CP takes about 100 bytes, the map has to be a third larger than the number of CPs.
+     */
+    private static int expectedSize(final long fileLength) {
+        return (int) Math.min(1 << 30, fileLength / 75);
+    }
+
+    /**
+     * {@inheritDoc} The state is written to a temporary file in the same directory first, which then replaces the state
+     * file atomically, so a crash while writing never leaves a truncated state file behind.
+     */
     @Override
     public void safeState(final List<ChargingPoint> currentState) {
         final Path path = directoryPath.resolve(FILE_NAME);
+        final Path temporaryPath = directoryPath.resolve(TEMPORARY_FILE_NAME);
         LOGGER.debug("Writing state file to {}", path);
+        final PersistenceEvent event = new PersistenceEvent();
+        event.begin();
+        long bytes = 0;
         try {
             createDirectoriesIfNecessarry(directoryPath);
-            Files.write(path, objectMapper.writeValueAsBytes(currentState), WRITE, CREATE, TRUNCATE_EXISTING);
+            try (CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporaryPath, WRITE, CREATE, TRUNCATE_EXISTING), 1 << 16))) {
+                objectMapper.writeValue(out, currentState);
+                bytes = out.getCount();
+            }
+            Files.move(temporaryPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
         } catch (IOException e) {
             LOGGER.error("Failed to write current state to {}", directoryPath, e);
+            deleteIfExists(temporaryPath);
+        } finally {
+            commit(event, "safeState", path, bytes, currentState.size());
+        }
+    }
+
+    private static void deleteIfExists(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete {}", path, e);
+        }
+    }
+
+    private static void commit(final PersistenceEvent event, final String operation, final Path path, final long bytes,
+                               final int chargingPoints) {
+        if (event.shouldCommit()) {
+            event.setOperation(operation);
+            event.setLocation(path.toString());
+            event.setBytes(bytes);
+            event.setChargingPoints(chargingPoints);
+            event.commit();
         }
     }
 
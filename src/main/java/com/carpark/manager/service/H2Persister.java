@@ -0,0 +1,205 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.monitoring.PersistenceEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes or reads the current State. In this Case to an embedded H2 database file, with one row per CP. Every event
+ * only upserts the rows of the CPs that changed within one transaction, so the cost of an event does not grow with the
+ * park, and after a crash the database recovers the last committed state.
+ */
+public class H2Persister implements StatePersister, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(H2Persister.class);
+    private static final String DATABASE_NAME = "state";
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS charging_point (" +
+            "name VARCHAR(255) PRIMARY KEY, plugged BOOLEAN NOT NULL, current INT NOT NULL, " +
+            "plug_in_timestamp BIGINT NOT NULL, plug_in_sequence BIGINT NOT NULL)";
+    private static final String SELECT_ALL = "SELECT name, plugged, current, plug_in_timestamp, plug_in_sequence FROM charging_point";
+    private static final String UPSERT = "MERGE INTO charging_point (name, plugged, current, plug_in_timestamp, plug_in_sequence) " +
+            "KEY (name) VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE_ALL = "DELETE FROM charging_point";
+    /**
+     * Bytes of the fixed size columns of a row: plugged, current, plug_in_timestamp and plug_in_sequence.
+     */
+    private static final int FIXED_ROW_BYTES = 1 + Integer.BYTES + 2 * Long.BYTES;
+    private final String url;
+    private final Connection connection;
+    private final PreparedStatement upsert;
+    // set if a write failed and the rows may be stale, the whole state is written with the next call then
+    private boolean dirty;
+
+    /**
+     * Constructor
+     *
+     * @param directoryPath Path to the directory in which the database file should be stored.
+     * @throws IllegalStateException if the database can't be opened
+     */
+    public H2Persister(final Path directoryPath) {
+        checkNotNull(directoryPath, "directoryPath must not be null");
+        this.url = "jdbc:h2:file:" + directoryPath.toAbsolutePath().resolve(DATABASE_NAME);
+        try {
+            connection = DriverManager.getConnection(url);
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+            }
+            connection.commit();
+            upsert = connection.prepareStatement(UPSERT);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not open state database " + url, e);
+        }
+        LOGGER.info("Opened state database {}", url);
+    }
+
+    /**
+     * {@inheritDoc} An empty table counts as no state, as every configured park has at least one CP.
+     *
+     * @throws IllegalStateException if the table can't be read
+     */
+    @Override
+    public synchronized Optional<Map<String, ChargingPoint>> readState() {
+        final PersistenceEvent event = new PersistenceEvent();
+        event.begin();
+        final Map<String, ChargingPoint> chargingPoints = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(SELECT_ALL)) {
+            while (resultSet.next()) {
+                final ChargingPoint cp = new ChargingPoint(resultSet.getString(1), resultSet.getBoolean(2),
+                        resultSet.getInt(3), resultSet.getLong(4), resultSet.getLong(5));
+                chargingPoints.put(cp.getName(), cp);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read state database " + url, e);
+        } finally {
+            commit(event, "readState", chargingPoints.values());
+        }
+        if (chargingPoints.isEmpty()) {
+            LOGGER.info("No state found in {}", url);
+            return Optional.empty();
+        }
+        LOGGER.info("Found existing state of {} CPs in {}", chargingPoints.size(), url);
+        return Optional.of(chargingPoints);
+    }
+
+    @Override
+    public synchronized void safeState(final List<ChargingPoint> currentState) {
+        final PersistenceEvent event = new PersistenceEvent();
+        event.begin();
+        try {
+            writeState(currentState);
+        } finally {
+            commit(event, "safeState", currentState);
+        }
+    }
+
+    /**
+     * {@inheritDoc} If writing the changes fails, the whole state is written instead, so the rows of the failed
+     * transaction don't stay stale. If that fails as well, the whole state is written with the next event.
+     */
+    @Override
+    public synchronized void safeChanges(final List<ChargingPoint> changedChargingPoints,
+                                         final Supplier<List<ChargingPoint>> currentState) {
+        if (changedChargingPoints.isEmpty() && !dirty) {
+            return;
+        }
+        if (dirty) {
+            safeState(currentState.get());
+            return;
+        }
+        final PersistenceEvent event = new PersistenceEvent();
+        event.begin();
+        try {
+            upsert(changedChargingPoints);
+            connection.commit();
+        } catch (SQLException e) {
+            rollback(e);
+            dirty = true;
+        } finally {
+            commit(event, "safeChanges", changedChargingPoints);
+        }
+        if (dirty) {
+            LOGGER.warn("Writing the whole state to {} instead of the changes", url);
+            safeState(currentState.get());
+        }
+    }
+
+    private void writeState(final List<ChargingPoint> currentState) {
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(DELETE_ALL);
+            }
+            upsert(currentState);
+            connection.commit();
+            dirty = false;
+        } catch (SQLException e) {
+            rollback(e);
+            dirty = true;
+        }
+    }
+
+    private void upsert(final List<ChargingPoint> chargingPoints) throws SQLException {
+        for (ChargingPoint cp : chargingPoints) {
+            upsert.setString(1, cp.getName());
+            upsert.setBoolean(2, cp.isPlugged());
+            upsert.setInt(3, cp.getCurrent());
+            upsert.setLong(4, cp.getPlugInTimestamp());
+            upsert.setLong(5, cp.getPlugInSequence());
+            upsert.addBatch();
+        }
+        upsert.executeBatch();
+    }
+
+    private void rollback(final SQLException cause) {
+        LOGGER.error("Failed to write current state to {}", url, cause);
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            LOGGER.error("Failed to roll back state database {}", url, e);
+        }
+    }
+
+    /**
+     * Commits the event with the payload of the rows as byte count, H2 doesn't report the bytes it writes to the file
+     * per transaction. The payload is the UTF-8 encoded name plus the fixed size columns of every row.
+     */
+    private void commit(final PersistenceEvent event, final String operation,
+                        final Collection<ChargingPoint> chargingPoints) {
+        if (event.shouldCommit()) {
+            long bytes = 0;
+            for (ChargingPoint cp : chargingPoints) {
+                bytes += cp.getName().getBytes(StandardCharsets.UTF_8).length + FIXED_ROW_BYTES;
+            }
+            event.setOperation(operation);
+            event.setLocation(url);
+            event.setBytes(bytes);
+            event.setChargingPoints(chargingPoints.size());
+            event.commit();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.error("Failed to close state database {}", url, e);
+        }
+    }
+}
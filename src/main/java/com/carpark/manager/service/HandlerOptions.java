@@ -0,0 +1,89 @@
+package com.carpark.manager.service;
+
+import java.time.Clock;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The optional collaborators of a {@link RequestHandler}. The defaults take the plug-in timestamps from the system
+ * clock, suggest the poll intervals of {@link PollIntervalAdvisor#DEFAULT}, distribute the allowed currents only and
+ * assign the fast charging current by plug-in order. The options are immutable, every with-method returns a copy.
+ */
+public class HandlerOptions {
+
+    /**
+     * The default options.
+     */
+    public static final HandlerOptions DEFAULT = new HandlerOptions(Clock.systemUTC(), PollIntervalAdvisor.DEFAULT,
+            null, null);
+
+    private final Clock clock;
+    private final PollIntervalAdvisor pollIntervalAdvisor;
+    private final MeterValueStore meterHeadroom;
+    private final DepartureScheduler departureScheduler;
+
+    private HandlerOptions(final Clock clock, final PollIntervalAdvisor pollIntervalAdvisor,
+                           final MeterValueStore meterHeadroom, final DepartureScheduler departureScheduler) {
+        this.clock = clock;
+        this.pollIntervalAdvisor = pollIntervalAdvisor;
+        this.meterHeadroom = meterHeadroom;
+        this.departureScheduler = departureScheduler;
+    }
+
+    /**
+     * @param clock {@link Clock} to take the plug-in timestamps from
+     * @return the same options with the given clock
+     */
+    public HandlerOptions withClock(final Clock clock) {
+        return new HandlerOptions(checkNotNull(clock, "clock must not be null"), pollIntervalAdvisor, meterHeadroom,
+                departureScheduler);
+    }
+
+    /**
+     * @param pollIntervalAdvisor suggests the CPs when to poll their allowed current next
+     * @return the same options with the given advisor
+     */
+    public HandlerOptions withPollIntervalAdvisor(final PollIntervalAdvisor pollIntervalAdvisor) {
+        return new HandlerOptions(clock, checkNotNull(pollIntervalAdvisor, "pollIntervalAdvisor must not be null"),
+                meterHeadroom, departureScheduler);
+    }
+
+    /**
+     * Hands the current the cars don't draw according to their meter values to other cars.
+     *
+     * @param meterValueStore keeps the currents the cars actually draw
+     * @return the same options reclaiming the headroom
+     */
+    public HandlerOptions withMeterHeadroom(final MeterValueStore meterValueStore) {
+        return new HandlerOptions(clock, pollIntervalAdvisor,
+                checkNotNull(meterValueStore, "meterValueStore must not be null"), departureScheduler);
+    }
+
+    /**
+     * Assigns the fast charging current by the demands of the drivers instead of by plug-in order.
+     *
+     * @param departureScheduler schedules the cars by their demands
+     * @return the same options scheduling by departure
+     */
+    public HandlerOptions withDepartureScheduler(final DepartureScheduler departureScheduler) {
+        return new HandlerOptions(clock, pollIntervalAdvisor, meterHeadroom,
+                checkNotNull(departureScheduler, "departureScheduler must not be null"));
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public PollIntervalAdvisor getPollIntervalAdvisor() {
+        return pollIntervalAdvisor;
+    }
+
+    public Optional<MeterValueStore> getMeterHeadroom() {
+        return Optional.ofNullable(meterHeadroom);
+    }
+
+    public Optional<DepartureScheduler> getDepartureScheduler() {
+        return Optional.ofNullable(departureScheduler);
+    }
+}
@@ -0,0 +1,28 @@
+package com.carpark.manager.service;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Regularly redistributes the currents according to the latest meter values, so unused current is handed to other
+ * cars and clawed back soon after a car ramps up again or stops reporting.
+ */
+public class MeterHeadroomRebalancer {
+
+    private final RequestHandler requestHandler;
+
+    /**
+     * Constructor
+     *
+     * @param requestHandler the handler to rebalance
+     */
+    public MeterHeadroomRebalancer(final RequestHandler requestHandler) {
+        this.requestHandler = checkNotNull(requestHandler, "requestHandler must not be null");
+    }
+
+    @Scheduled(fixedDelayString = "${meter-headroom.rebalance-interval-millis:1000}")
+    public void rebalance() {
+        requestHandler.rebalance();
+    }
+}
@@ -0,0 +1,89 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.MeterValue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the latest meter value of each CP and tells the {@link CurrentDistributor} how much current to reserve for a
+ * CP based on it. Readings are merged per CP without any global lock, so ingesting them never waits for plug events.
+ * <p>
+ * Only readings taken after the car was plugged in and younger than the max. age count. The current reserved for a CP
+ * is its drawn current plus a safety margin, rounded up, but never more than its allowed current. Without a valid
+ * reading the whole allowed current is reserved, so a car which stops reporting gets its allowance back.
+ */
+public class MeterValueStore {
+
+    private final Map<String, Reading> latestReadings = new ConcurrentHashMap<>();
+    private final Clock clock;
+    private final int safetyMargin;
+    private final long maxAgeMillis;
+
+    /**
+     * Constructor
+     *
+     * @param clock        {@link Clock} to stamp readings without a timestamp and to check their age
+     * @param safetyMargin current in Ampere to reserve on top of the drawn current
+     * @param maxAge       age after which a reading no longer counts
+     */
+    public MeterValueStore(final Clock clock, final int safetyMargin, final Duration maxAge) {
+        this.clock = checkNotNull(clock, "clock must not be null");
+        checkArgument(safetyMargin >= 0, "safetyMargin must not be negative");
+        checkArgument(maxAge != null && !maxAge.isNegative(), "maxAge must not be negative");
+        this.safetyMargin = safetyMargin;
+        this.maxAgeMillis = maxAge.toMillis();
+    }
+
+    /**
+     * Records the given readings. Of several readings of the same CP the latest one is kept, no matter in which order
+     * they arrive. Readings stamped later than now are taken as read now, otherwise a meter with a clock running ahead
+     * would report a reading which never gets too old and is never replaced.
+     *
+     * @param meterValues the readings to record
+     */
+    public void record(final Iterable<MeterValue> meterValues) {
+        final long now = clock.millis();
+        for (MeterValue meterValue : meterValues) {
+            final long timestamp = Math.min(meterValue.getTimestamp().orElse(now), now);
+            final Reading reading = new Reading(meterValue.getCurrent(), timestamp);
+            latestReadings.merge(meterValue.getCpName(), reading,
+                    (previous, next) -> next.timestamp >= previous.timestamp ? next : previous);
+        }
+    }
+
+    /**
+     * Returns the current to reserve for the given CP.
+     *
+     * @param chargingPoint the CP
+     * @return the current in Ampere, at most the allowed current of the CP
+     */
+    public int reservedCurrent(final ChargingPoint chargingPoint) {
+        if (!chargingPoint.isPlugged()) {
+            return 0;
+        }
+        final Reading reading = latestReadings.get(chargingPoint.getName());
+        if (reading == null || reading.timestamp < chargingPoint.getPlugInTimestamp()
+                || reading.timestamp < clock.millis() - maxAgeMillis) {
+            return chargingPoint.getCurrent();
+        }
+        return (int) Math.min(chargingPoint.getCurrent(), Math.ceil(reading.current + safetyMargin));
+    }
+
+    private static final class Reading {
+
+        private final double current;
+        private final long timestamp;
+
+        private Reading(final double current, final long timestamp) {
+            this.current = current;
+            this.timestamp = timestamp;
+        }
+    }
+}
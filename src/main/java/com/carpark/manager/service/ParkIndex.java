@@ -0,0 +1,248 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.ParkQuery;
+import com.carpark.manager.domain.ParkQuery.CurrentLevel;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary indexes over the CPs to answer filtered queries with a cost depending on the size of the result rather
+ * than on the size of the park: the free CPs ordered by name, and the fast and the slow charging ones as well as the
+ * waiting ones each ordered by plug-in time. The indexes hold copies of the CPs, which are replaced whenever a CP changes.
+ * <p>
+ * Updates have to be serialized by the caller. Queries can run concurrently to them, but may miss a CP while it is
+ * moved from one index to another.
+ */
+public class ParkIndex {
+
+    private static final Comparator<ChargingPoint> BY_NAME = Comparator.comparing(ChargingPoint::getName);
+    private static final Comparator<ChargingPoint> BY_PLUG_IN_ORDER_AND_NAME = ChargingPoint.BY_PLUG_IN_ORDER
+            .thenComparing(ChargingPoint::getName);
+    private final int lowCurrent;
+    private final Map<String, ChargingPoint> indexed;
+    private final ConcurrentNavigableMap<ChargingPoint, Boolean> free;
+    private final ConcurrentNavigableMap<ChargingPoint, Boolean> fast;
+    private final ConcurrentNavigableMap<ChargingPoint, Boolean> slow;
+    private final ConcurrentNavigableMap<ChargingPoint, Boolean> waiting;
+    private volatile int totalCurrent;
+    private volatile int minimalCurrent;
+    // currents of the CPs before the first update since recording started, null while not recording
+    private Map<String, Integer> previousCurrents;
+
+    /**
+     * Constructor for an empty index
+     *
+     * @param lowCurrent max. current per CP in Ampere for slow charging, CPs with a higher current are fast charging
+     */
+    public ParkIndex(final int lowCurrent) {
+        this(lowCurrent, Collections.emptyList());
+    }
+
+    /**
+     * Constructor indexing the given CPs, e.g. after recovering the state. Each index is sorted once and then built
+     * from the sorted CPs in linear time instead of inserting them one by one.
+     *
+     * @param lowCurrent     max. current per CP in Ampere for slow charging, CPs with a higher current are fast charging
+     * @param chargingPoints the CPs to index
+     */
+    public ParkIndex(final int lowCurrent, final Collection<ChargingPoint> chargingPoints) {
+        this.lowCurrent = lowCurrent;
+        this.indexed = new ConcurrentHashMap<>(Math.max(16, chargingPoints.size() * 4 / 3 + 1));
+        final List<ChargingPoint> freeCPs = new ArrayList<>();
+        final List<ChargingPoint> fastCPs = new ArrayList<>();
+        final List<ChargingPoint> slowCPs = new ArrayList<>();
+        final List<ChargingPoint> waitingCPs = new ArrayList<>();
+        int total = 0;
+        int minimal = 0;
+        for (ChargingPoint chargingPoint : chargingPoints) {
+            final ChargingPoint copy = chargingPoint.copy();
+            indexed.put(copy.getName(), copy);
+            if (!copy.isPlugged()) {
+                freeCPs.add(copy);
+            } else if (copy.isWaiting()) {
+                waitingCPs.add(copy);
+            } else {
+                (copy.getCurrent() > lowCurrent ? fastCPs : slowCPs).add(copy);
+            }
+            total += currentOf(copy);
+            minimal += minimalCurrentOf(copy);
+        }
+        this.free = sortedIndex(freeCPs, BY_NAME);
+        this.fast = sortedIndex(fastCPs, BY_PLUG_IN_ORDER_AND_NAME);
+        this.slow = sortedIndex(slowCPs, BY_PLUG_IN_ORDER_AND_NAME);
+        this.waiting = sortedIndex(waitingCPs, BY_PLUG_IN_ORDER_AND_NAME);
+        this.totalCurrent = total;
+        this.minimalCurrent = minimal;
+    }
+
+    private static ConcurrentNavigableMap<ChargingPoint, Boolean> sortedIndex(final List<ChargingPoint> chargingPoints,
+                                                                              final Comparator<ChargingPoint> comparator) {
+        final ChargingPoint[] sorted = chargingPoints.toArray(new ChargingPoint[0]);
+        Arrays.parallelSort(sorted, comparator);
+        // the skip list is built in linear time from a sorted map, the already sorted array is not sorted again
+        final SortedMap<ChargingPoint, Boolean> sortedMap = Maps.asMap(
+                ImmutableSortedSet.copyOf(comparator, Arrays.asList(sorted)), chargingPoint -> Boolean.TRUE);
+        return new ConcurrentSkipListMap<>(sortedMap);
+    }
+
+    /**
+     * Moves the given CP to the index matching its actual status.
+     *
+     * @param chargingPoint the CP that changed
+     */
+    public void update(final ChargingPoint chargingPoint) {
+        final ChargingPoint copy = chargingPoint.copy();
+        final ChargingPoint previous = indexed.put(copy.getName(), copy);
+        int total = totalCurrent + currentOf(copy);
+        int minimal = minimalCurrent + minimalCurrentOf(copy);
+        if (previous != null) {
+            if (previousCurrents != null) {
+                previousCurrents.putIfAbsent(previous.getName(), currentOf(previous));
+            }
+            indexOf(previous).remove(previous);
+            total -= currentOf(previous);
+            minimal -= minimalCurrentOf(previous);
+        }
+        indexOf(copy).put(copy, Boolean.TRUE);
+        totalCurrent = total;
+        minimalCurrent = minimal;
+    }
+
+    /**
+     * Starts recording the currents the CPs had before they are updated, e.g. to tell how they changed with an event.
+     */
+    public void recordPreviousCurrents() {
+        previousCurrents = new HashMap<>();
+    }
+
+    /**
+     * Stops recording and returns the currents the CPs updated since {@link #recordPreviousCurrents()} had before
+     * their first update.
+     *
+     * @return previous current in Ampere by name of the CP, 0 for a CP that was not plugged
+     */
+    public Map<String, Integer> stopRecordingPreviousCurrents() {
+        final Map<String, Integer> recorded = previousCurrents != null ? previousCurrents : Collections.emptyMap();
+        previousCurrents = null;
+        return recorded;
+    }
+
+    private static int currentOf(final ChargingPoint chargingPoint) {
+        return chargingPoint.isPlugged() ? chargingPoint.getCurrent() : 0;
+    }
+
+    private int minimalCurrentOf(final ChargingPoint chargingPoint) {
+        return Math.min(currentOf(chargingPoint), lowCurrent);
+    }
+
+    private ConcurrentNavigableMap<ChargingPoint, Boolean> indexOf(final ChargingPoint chargingPoint) {
+        if (!chargingPoint.isPlugged()) {
+            return free;
+        }
+        if (chargingPoint.isWaiting()) {
+            return waiting;
+        }
+        return chargingPoint.getCurrent() > lowCurrent ? fast : slow;
+    }
+
+    /**
+     * @return sum of the currents of all plugged CPs in Ampere
+     */
+    public int getTotalCurrent() {
+        return totalCurrent;
+    }
+
+    /**
+     * @return sum of the currents of all plugged CPs in Ampere if they were throttled to slow charging current
+     */
+    public int getMinimalCurrent() {
+        return minimalCurrent;
+    }
+
+    /**
+     * @return the indexed copies of the fast charging CPs, which must not be modified, the one plugged in first first
+     */
+    public Iterable<ChargingPoint> getFastInPlugInOrder() {
+        return fast.keySet();
+    }
+
+    /**
+     * @return the indexed copies of the slow charging CPs, which must not be modified, the one plugged in first first
+     */
+    public Iterable<ChargingPoint> getSlowInPlugInOrder() {
+        return slow.keySet();
+    }
+
+    /**
+     * @param cpName Name of the CP
+     * @return the indexed copy of the CP, which must not be modified, or null if the CP is not indexed
+     */
+    public ChargingPoint get(final String cpName) {
+        return indexed.get(cpName);
+    }
+
+    /**
+     * Checks whether the given CP is among the ones plugged in first of all CPs with the same current level, or of all
+     * waiting CPs if it is waiting. Only looks at the first CPs of that level, so the cost depends on the given count rather than on the size of the park.
+     *
+     * @param chargingPoint a plugged CP
+     * @param count         number of the first plugged CPs to look at
+     * @return true if the CP is one of the count first plugged CPs of its current level
+     */
+    public boolean isAmongFirstPlugged(final ChargingPoint chargingPoint, final int count) {
+        final Iterator<ChargingPoint> iterator = indexOf(chargingPoint).keySet().iterator();
+        for (int i = 0; i < count && iterator.hasNext(); i++) {
+            if (iterator.next().getName().equals(chargingPoint.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the CPs matching the given query.
+     *
+     * @param query the filters to apply
+     * @param now   actual time in milliseconds since the epoch to compare the plug-in times with
+     * @return the indexed copies of the matching CPs, which must not be modified
+     */
+    public List<ChargingPoint> query(final ParkQuery query, final long now) {
+        final List<ChargingPoint> result = new ArrayList<>();
+        if (query.getStatus().orElse(ParkQuery.Status.AVAILABLE) == ParkQuery.Status.AVAILABLE
+                && !query.getCurrentLevel().isPresent() && !query.getPluggedLongerThan().isPresent()) {
+            Iterators.addAll(result, free.keySet().iterator());
+        }
+        if (query.getStatus().orElse(ParkQuery.Status.OCCUPIED) == ParkQuery.Status.OCCUPIED) {
+            final CurrentLevel currentLevel = query.getCurrentLevel().orElse(null);
+            if (currentLevel != CurrentLevel.LOW) {
+                addPluggedLongerThan(fast, query, now, result);
+            }
+            if (currentLevel != CurrentLevel.HIGH) {
+                addPluggedLongerThan(slow, query, now, result);
+            }
+        }
+        if (query.getStatus().orElse(ParkQuery.Status.WAITING) == ParkQuery.Status.WAITING
+                && !query.getCurrentLevel().isPresent()) {
+            addPluggedLongerThan(waiting, query, now, result);
+        }
+        return result;
+    }
+
+    private static void addPluggedLongerThan(final ConcurrentNavigableMap<ChargingPoint, Boolean> index, final ParkQuery query,
+                                             final long now, final List<ChargingPoint> result) {
+        if (query.getPluggedLongerThan().isPresent()) {
+            final ChargingPoint pluggedAtCutOff = new ChargingPoint("");
+            pluggedAtCutOff.plugIn(now - query.getPluggedLongerThan().get().toMillis(), Long.MIN_VALUE);
+            Iterators.addAll(result, index.headMap(pluggedAtCutOff, false).keySet().iterator());
+        } else {
+            Iterators.addAll(result, index.keySet().iterator());
+        }
+    }
+}
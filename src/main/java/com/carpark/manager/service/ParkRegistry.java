@@ -0,0 +1,161 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.ParkAssignment;
+import com.carpark.manager.exceptions.ParkNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The parks a manager node hosts besides its configured one when the parks are sharded across several nodes. Each
+ * park has its own {@link RequestHandler} and its state is persisted in a directory of its own, so a park can be
+ * released by one node and hosted by another one together with its state.
+ */
+public class ParkRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParkRegistry.class);
+    private static final Pattern PARK_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+    private final Map<String, HostedPark> parks = new ConcurrentHashMap<>();
+    private final Path directoryPath;
+    private final Function<Path, StatePersister> statePersisterFactory;
+    private final Clock clock;
+    private final PollIntervalAdvisor pollIntervalAdvisor;
+
+    /**
+     * Constructor
+     *
+     * @param directoryPath         Path to the directory in which the state of each park is stored in a subdirectory
+     * @param statePersisterFactory creates the {@link StatePersister} for the directory of a park
+     * @param clock                 {@link Clock} to take the plug-in timestamps from
+     * @param pollIntervalAdvisor   suggests the CPs when to poll their allowed current next
+     */
+    public ParkRegistry(final Path directoryPath, final Function<Path, StatePersister> statePersisterFactory,
+                        final Clock clock, final PollIntervalAdvisor pollIntervalAdvisor) {
+        this.directoryPath = checkNotNull(directoryPath, "directoryPath must not be null");
+        this.statePersisterFactory = checkNotNull(statePersisterFactory, "statePersisterFactory must not be null");
+        this.clock = checkNotNull(clock, "clock must not be null");
+        this.pollIntervalAdvisor = checkNotNull(pollIntervalAdvisor, "pollIntervalAdvisor must not be null");
+    }
+
+    /**
+     * Starts hosting the given park. If the assignment carries a state it replaces the persisted one, otherwise the
+     * persisted state is recovered or a new one is created. Does nothing if the park is already hosted.
+     *
+     * @param park       name of the park
+     * @param assignment configuration and optionally state of the park
+     * @return true if the park was not hosted before
+     * @throws IllegalStateException if the persisted state does not match the configuration of the park
+     */
+    public synchronized boolean host(final String park, final ParkAssignment assignment) {
+        checkArgument(PARK_NAME.matcher(park).matches(), "park name may only contain letters, digits, _ and -");
+        if (parks.containsKey(park)) {
+            return false;
+        }
+        final StatePersister statePersister = statePersisterFactory.apply(directoryPath.resolve(park));
+        assignment.getState().ifPresent(statePersister::safeState);
+        final RequestHandler requestHandler = new RequestHandler(assignment.getChargingPoints(),
+                assignment.getMaxCurrent(), assignment.getHighCurrent(), assignment.getLowCurrent(), statePersister,
+                HandlerOptions.DEFAULT.withClock(clock).withPollIntervalAdvisor(pollIntervalAdvisor));
+        parks.put(park, new HostedPark(requestHandler, statePersister));
+        LOGGER.info("Hosting park {} with {} CPs", park, assignment.getChargingPoints().size());
+        return true;
+    }
+
+    /**
+     * Applies the given action to the {@link RequestHandler} of a park. A park is not released while an action runs.
+     *
+     * @param park   name of the park
+     * @param action the action to apply
+     * @param <T>    result of the action
+     * @return the result of the action
+     * @throws ParkNotFoundException if the park is not hosted by this node
+     */
+    public <T> T withPark(final String park, final Function<RequestHandler, T> action) {
+        final HostedPark hostedPark = parks.get(park);
+        if (hostedPark == null) {
+            throw new ParkNotFoundException(park);
+        }
+        hostedPark.lock.readLock().lock();
+        try {
+            if (hostedPark.released) {
+                throw new ParkNotFoundException(park);
+            }
+            return action.apply(hostedPark.requestHandler);
+        } finally {
+            hostedPark.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops hosting the given park, waiting for running actions, and deletes its persisted state, so it can be
+     * hosted by another node.
+     *
+     * @param park name of the park
+     * @return the final state of the park
+     * @throws ParkNotFoundException if the park is not hosted by this node
+     */
+    public synchronized List<ChargingPoint> release(final String park) {
+        final HostedPark hostedPark = parks.remove(park);
+        if (hostedPark == null) {
+            throw new ParkNotFoundException(park);
+        }
+        hostedPark.lock.writeLock().lock();
+        try {
+            hostedPark.released = true;
+            final List<ChargingPoint> state = hostedPark.requestHandler.getChargingPoints();
+            if (hostedPark.statePersister instanceof Closeable) {
+                ((Closeable) hostedPark.statePersister).close();
+            }
+            deleteRecursively(directoryPath.resolve(park));
+            LOGGER.info("Released park {}", park);
+            return state;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete the state of park " + park, e);
+        } finally {
+            hostedPark.lock.writeLock().unlock();
+        }
+    }
+
+    private static void deleteRecursively(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static final class HostedPark {
+
+        private final RequestHandler requestHandler;
+        private final StatePersister statePersister;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean released;
+
+        private HostedPark(final RequestHandler requestHandler, final StatePersister statePersister) {
+            this.requestHandler = requestHandler;
+            this.statePersister = statePersister;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Suggests to a CP when to poll its allowed current next. CPs whose current could change within the max. interval are
+ * asked to poll soon, CPs whose current is stable can back off. Whether a CP is affected follows from its position in
+ * the plug-in order of its current level and the headroom left to the max. current, or from its position in the
+ * waiting queue. If the distributor reclaims the headroom the cars don't draw, every fast CP is asked to poll soon, as
+ * its allowance may rest on current other cars can ramp up to at any time, so a claw-back reaches the CP within the
+ * min. interval.
+ * <p>
+ * A CP is only judged stable if the number of events expected within the max. interval could not change its current,
+ * e.g. k plug-ins need k times the fast charging current, which the headroom and the throttled CPs have to cover.
+ * Only more events than expected within its poll interval can throttle a CP that backed off, the park can then exceed
+ * its max. current by the allowances taken back but not yet polled until the CP polls.
+ */
+public class PollIntervalAdvisor {
+
+    /**
+     * Advisor suggesting 30 seconds for CPs which could change with the next 5 events, 10 minutes for stable CPs and
+     * the baseline of 2 minutes for free CPs.
+     */
+    public static final PollIntervalAdvisor DEFAULT = new PollIntervalAdvisor(Duration.ofSeconds(30), Duration.ofMinutes(2),
+            Duration.ofMinutes(10), 5);
+
+    private final Duration minInterval;
+    private final Duration defaultInterval;
+    private final Duration maxInterval;
+    private final int eventsPerMaxInterval;
+
+    /**
+     * Constructor
+     *
+     * @param minInterval          interval for CPs whose current could change within the max. interval
+     * @param defaultInterval      interval for CPs without a car plugged in
+     * @param maxInterval          interval for CPs whose current is stable
+     * @param eventsPerMaxInterval number of plug-ins or plug-offs a CP has to stay stable for to back off, i.e. the
+     *                             events expected within the max. interval at peak times
+     */
+    public PollIntervalAdvisor(final Duration minInterval, final Duration defaultInterval, final Duration maxInterval,
+                               final int eventsPerMaxInterval) {
+        this.minInterval = checkNotNull(minInterval, "minInterval must not be null");
+        this.defaultInterval = checkNotNull(defaultInterval, "defaultInterval must not be null");
+        this.maxInterval = checkNotNull(maxInterval, "maxInterval must not be null");
+        checkArgument(!minInterval.isNegative() && minInterval.compareTo(defaultInterval) <= 0
+                        && defaultInterval.compareTo(maxInterval) <= 0,
+                "intervals have to be ordered min <= default <= max");
+        checkArgument(eventsPerMaxInterval > 0, "eventsPerMaxInterval must be positive");
+        this.eventsPerMaxInterval = eventsPerMaxInterval;
+    }
+
+    /**
+     * Returns the interval after which the given CP should poll its allowed current again.
+     *
+     * @param cpName      Name of the CP
+     * @param index       the actual state of the park
+     * @param distributor the distributor the currents are assigned by
+     * @return the suggested poll interval
+     */
+    public Duration nextPollInterval(final String cpName, final ParkIndex index, final CurrentDistributor distributor) {
+        final ChargingPoint chargingPoint = index.get(cpName);
+        if (chargingPoint == null || !chargingPoint.isPlugged()) {
+            return defaultInterval;
+        }
+        if (chargingPoint.isWaiting()) {
+            // every plug-off promotes at most the car waiting the longest time
+            return index.isAmongFirstPlugged(chargingPoint, eventsPerMaxInterval) ? minInterval : maxInterval;
+        }
+        if (distributor.isReclaimingHeadroom() && chargingPoint.getCurrent() > distributor.getLowCurrent()) {
+            // the allowances may exceed the max. current, any rebalance can claw back fast charging
+            return minInterval;
+        }
+        final int step = distributor.getHighCurrent() - distributor.getLowCurrent();
+        final int headroom = distributor.getMaxCurrent() - index.getTotalCurrent();
+        final int affected;
+        if (chargingPoint.getCurrent() > distributor.getLowCurrent()) {
+            // the next plug-ins throttle the oldest fast CPs until each new car could charge fast
+            affected = divideRoundingUp(eventsPerMaxInterval * distributor.getHighCurrent() - headroom, step);
+        } else {
+            // the next plug-offs of slow cars boost the oldest slow CPs as far as the freed current allows
+            affected = (headroom + eventsPerMaxInterval * distributor.getLowCurrent()) / step;
+        }
+        return affected > 0 && index.isAmongFirstPlugged(chargingPoint, affected) ? minInterval : maxInterval;
+    }
+
+    private static int divideRoundingUp(final int dividend, final int divisor) {
+        return dividend <= 0 ? 0 : (dividend + divisor - 1) / divisor;
+    }
+}
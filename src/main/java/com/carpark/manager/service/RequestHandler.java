@@ -1,34 +1,56 @@
 package com.carpark.manager.service;
 
+import com.carpark.manager.domain.ChargingDemand;
 import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.MeterValue;
+import com.carpark.manager.domain.ParkEvent;
+import com.carpark.manager.domain.ParkQuery;
 import com.carpark.manager.exceptions.CpNotFoundException;
-import com.carpark.manager.exceptions.MaxCurrentExceededException;
+import com.carpark.manager.exceptions.SimulationNotSupportedException;
+import com.carpark.manager.monitoring.PlugEvent;
+import com.carpark.manager.monitoring.QueuedPlugInEvent;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * Handles the plug in and plug off requests of th CPs distributing the available current among them. It gives those
- * CPs which have a car plugged in later a higher priority, trying to give the the most possible CPs the current
- * for fast charging.
+ * Handles the plug in and plug off requests of th CPs distributing the available current among them using a
+ * {@link CurrentDistributor}. It gives those CPs which have a car plugged in later a higher priority, trying to give
+ * the the most possible CPs the current for fast charging.
  */
 public class RequestHandler {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(RequestHandler.class);
     private final Map<String, ChargingPoint> chargingPoints;
-    private final int highCurrent;
-    private final int lowCurrent;
-    private final int maxCurrent;
-    private final FileSystemPersister statePersister;
+    private final CurrentDistributor distributor;
+    private final WaitingQueue waitingQueue;
+    private final ParkIndex index;
+    private final PollIntervalAdvisor pollIntervalAdvisor;
+    private final MeterValueStore meterValueStore;
+    // null if the currents are assigned by plug-in order
+    private final DepartureScheduler departureScheduler;
+    private final StatePersister statePersister;
+    private final Clock clock;
+    private final StartupReport startupReport;
+    private long plugInSequence;
+    private volatile Map<String, ChargingPoint> snapshot;
 
     /**
      * Constructor
@@ -37,76 +59,134 @@ public class RequestHandler {
      * @param maxCurrent     max. available current in total in Ampere
      * @param highCurrent    max. current per CP in Ampere for fast charging
      * @param lowCurrent     max. current per CP in Ampere for slow charging
+     * @param statePersister persists the state of the CPs and recovers it on startup
+     * @param options        the optional collaborators, e.g. {@link HandlerOptions#DEFAULT}
      */
-    @Autowired
     public RequestHandler(final List<String> chargingPoints, final int maxCurrent, final int highCurrent, final int lowCurrent,
-                          final FileSystemPersister statePersister) {
+                          final StatePersister statePersister, final HandlerOptions options) {
         checkNotNull(chargingPoints, "chargingPoints must not be null");
-        checkArgument(maxCurrent > 0, "maxCurrent has to be greater 0");
-        checkArgument(highCurrent > 0, "highCurrent has to be greater 0");
-        checkArgument(lowCurrent > 0, "lowCurrent has to be greater 0");
-        checkArgument(highCurrent > lowCurrent, "highCurrent has to be greater than lowCurrent");
-        this.maxCurrent = maxCurrent;
-        this.highCurrent = highCurrent;
-        this.lowCurrent = lowCurrent;
+        checkNotNull(options, "options must not be null");
+        this.clock = options.getClock();
+        this.pollIntervalAdvisor = options.getPollIntervalAdvisor();
+        this.departureScheduler = options.getDepartureScheduler().orElse(null);
+        // without reclaiming the headroom the readings are still recorded, but never reserved
+        this.meterValueStore = options.getMeterHeadroom().orElseGet(() -> new MeterValueStore(clock, 0, Duration.ZERO));
+        this.distributor = options.getMeterHeadroom().isPresent()
+                ? new CurrentDistributor(maxCurrent, highCurrent, lowCurrent, meterValueStore::reservedCurrent)
+                : new CurrentDistributor(maxCurrent, highCurrent, lowCurrent);
         this.statePersister = checkNotNull(statePersister, "statePersister must not be null");
+        this.startupReport = new StartupReport();
         this.chargingPoints = getOrCreatehargingPoints(chargingPoints);
-
+        this.plugInSequence = nextPlugInSequence(this.chargingPoints.values());
+        this.waitingQueue = new WaitingQueue(this.chargingPoints.values());
+        startupReport.phase("plug-in order");
+        this.index = new ParkIndex(lowCurrent, this.chargingPoints.values());
+        startupReport.phase("index");
+        if (departureScheduler != null) {
+            // the demands are not persisted, cars plugged in before a restart are scheduled like cars without a demand
+            this.chargingPoints.values().stream().filter(ChargingPoint::isPlugged)
+                    .forEach(cp -> departureScheduler.plugIn(cp, ChargingDemand.NONE, clock.millis()));
+        }
+        LOGGER.info("Started with {} CPs in {}", this.chargingPoints.size(), startupReport);
     }
 
     /**
-     * Tries to read the old state from {@link FileSystemPersister}. If not available creates a new Map from the config.
+     * Tries to read the old state from {@link StatePersister}. Only if none was persisted yet creates a new Map from the
+     * config and persists it, so that later only the changed CPs need to be written. A state that can't be read fails
+     * the startup instead of being overwritten. The recovered CP-names are compared with the
+     * configured ones through a hash set, so the check takes linear time even for large parks.
      *
      * @param nameList List of CP-names from the application config
      * @return A {@link Map} of CP-name to {@link ChargingPoint}
-     * @throws IllegalStateException if the list of CP-names is different from the one recovered from {@link FileSystemPersister}
+     * @throws IllegalStateException if the list of CP-names is different from the one recovered from {@link StatePersister}
+     *                               or the persisted state can't be read
      */
     private Map<String, ChargingPoint> getOrCreatehargingPoints(final List<String> nameList) {
-        final Map<String, ChargingPoint> chargingPoints = statePersister.readState().orElseGet(() -> nameList.stream().collect(Collectors.toMap(n -> n, ChargingPoint::new)));
+        final Optional<Map<String, ChargingPoint>> recovered = statePersister.readState();
+        startupReport.phase("read state");
+        if (!recovered.isPresent()) {
+            final Map<String, ChargingPoint> created = nameList.stream().collect(Collectors.toMap(n -> n, ChargingPoint::new));
+            statePersister.safeState(copies(created.values()));
+            startupReport.phase("create state");
+            return created;
+        }
 
-        if (!equalIgnoreOrder(nameList, chargingPoints.keySet())) {
-            LOGGER.error("The configuration seems to have changed since the last run.");
+        final Map<String, ChargingPoint> chargingPoints = recovered.get();
+        final Set<String> configured = new HashSet<>(nameList);
+        if (!configured.equals(chargingPoints.keySet())) {
+            LOGGER.error("The configuration seems to have changed since the last run, {} CPs are only configured, {} CPs "
+                            + "only recovered, e.g. {}", Sets.difference(configured, chargingPoints.keySet()).size(),
+                    Sets.difference(chargingPoints.keySet(), configured).size(),
+                    Iterables.limit(Sets.symmetricDifference(configured, chargingPoints.keySet()), 10));
             throw new IllegalStateException("Configuration does not match recovered state, please delete state file");
         }
+        startupReport.phase("reconcile");
         return chargingPoints;
     }
 
+
     /**
-     * Check if two {@link Collection}s are equal ignoring the order of the content.
+     * Handles message that a car plugged in at a CP redistributing the currents if necessary. If the max. current is
+     * not sufficient for another car, the CP gets 0A and waits until a plug-off frees enough current.
      *
-     * @param a the one {@link Collection}s to check
-     * @param b the other {@link Collection}s to check
-     * @return true if the contents are equal ignoring their order
+     * @param cpName Name of the CP to plug in (must be one of the configuration)
+     * @throws CpNotFoundException if the given name is not configured.
      */
-    private boolean equalIgnoreOrder(final Collection<String> a, final Collection<String> b) {
-        return a.containsAll(b) && a.size() == b.size();
+    public void plugIn(final String cpName) {
+        plugIn(cpName, ChargingDemand.NONE);
     }
 
-
     /**
-     * Handles message that a car plugged in at a CP redistributing the currents if necessary.
+     * Handles message that a car plugged in at a CP redistributing the currents if necessary. If the max. current is
+     * not sufficient for another car, the CP gets 0A and waits until a plug-off frees enough current. The demand of the
+     * driver is only taken into account if the currents are scheduled by departure.
      *
      * @param cpName Name of the CP to plug in (must be one of the configuration)
-     * @throws CpNotFoundException         if the given name is not configured.
-     * @throws MaxCurrentExceededException if the max. current would be exceeded.
+     * @param demand what the driver needs
+     * @throws CpNotFoundException if the given name is not configured.
      */
-    synchronized public void plugIn(final String cpName) {
-        LOGGER.info("Received plug-in-message for {}", cpName);
+    public void plugIn(final String cpName, final ChargingDemand demand) {
+        LOGGER.info("Received plug-in-message for {} needing {}", cpName, demand);
         checkCP(cpName);
 
-        final ChargingPoint chargingPoint = chargingPoints.get(cpName);
-        if (!chargingPoint.isPlugged()) {
-
-            throttleByLoadingTime();
-
-            if (currentSum() + lowCurrent > maxCurrent) {
-                throw new MaxCurrentExceededException("Max current not sufficient. Can't add another car.");
+        final PlugEvent event = new PlugEvent();
+        event.begin();
+        final long waitStart = System.nanoTime();
+        synchronized (this) {
+            event.setWaitForMonitor(System.nanoTime() - waitStart);
+            snapshot = null;
+            index.recordPreviousCurrents();
+            final ChargingPoint chargingPoint = chargingPoints.get(cpName);
+            final long timestamp = clock.millis();
+            List<ChargingPoint> changed = distributor.plugIn(chargingPoints, waitingQueue, index, chargingPoint,
+                    timestamp, plugInSequence++);
+            if (departureScheduler != null && !changed.isEmpty()) {
+                departureScheduler.plugIn(chargingPoint, demand, timestamp);
+                // the distributor already updated the index, the changes the scheduler undoes are not reported by it
+                final List<ChargingPoint> distributed = changed;
+                changed = union(chargingPoint, departureScheduler.solve(distributor, timestamp));
+                distributed.forEach(index::update);
+            }
+            changed.forEach(index::update);
+            final Map<String, Integer> previousCurrents = index.stopRecordingPreviousCurrents();
+            statePersister.safeChanges(copies(changed), this::getChargingPoints);
+            if (!changed.isEmpty() && chargingPoint.isWaiting()) {
+                final QueuedPlugInEvent queuedEvent = new QueuedPlugInEvent();
+                if (queuedEvent.shouldCommit()) {
+                    queuedEvent.setCpName(cpName);
+                    queuedEvent.setQueuePosition(waitingQueue.size());
+                    queuedEvent.setTotalCurrent(index.getTotalCurrent());
+                    queuedEvent.commit();
+                }
+            }
+            if (event.shouldCommit()) {
+                event.setCpName(cpName);
+                event.setAction("plug-in");
+                countTransitions(event, changed, previousCurrents, cpName);
+                event.setTotalCurrent(index.getTotalCurrent());
+                event.commit();
             }
-
-            chargingPoint.setCurrent(currentSum() + highCurrent <= maxCurrent ? highCurrent : lowCurrent);
-            chargingPoint.plugIn();
         }
-        statePersister.safeState(getChargingPoints());
     }
 
 
@@ -116,57 +196,199 @@ public class RequestHandler {
      * @param cpName Name of the CP to reset (must be one of the configuration).
      * @throws CpNotFoundException if the given name is not configured.
      */
-    synchronized public void plugOff(final String cpName) {
+    public void plugOff(final String cpName) {
         LOGGER.info("Received plug-off-message for {}", cpName);
         checkCP(cpName);
 
-        final ChargingPoint chargingPoint = chargingPoints.get(cpName);
-        if (chargingPoint.isPlugged()) {
-            chargingPoint.plugOff();
-            // set the youngest CPs to fast charging if possible
-            boostByLoadingTime();
+        final PlugEvent event = new PlugEvent();
+        event.begin();
+        final long waitStart = System.nanoTime();
+        synchronized (this) {
+            event.setWaitForMonitor(System.nanoTime() - waitStart);
+            snapshot = null;
+            index.recordPreviousCurrents();
+            final ChargingPoint chargingPoint = chargingPoints.get(cpName);
+            List<ChargingPoint> changed = distributor.plugOff(chargingPoints, waitingQueue, index, chargingPoint);
+            if (departureScheduler != null && !changed.isEmpty()) {
+                departureScheduler.plugOff(cpName);
+                // the distributor already updated the index, the changes the scheduler undoes are not reported by it
+                final List<ChargingPoint> distributed = changed;
+                changed = union(chargingPoint, departureScheduler.solve(distributor, clock.millis()));
+                distributed.forEach(index::update);
+            }
+            changed.forEach(index::update);
+            final Map<String, Integer> previousCurrents = index.stopRecordingPreviousCurrents();
+            statePersister.safeChanges(copies(changed), this::getChargingPoints);
+            if (event.shouldCommit()) {
+                event.setCpName(cpName);
+                event.setAction("plug-off");
+                countTransitions(event, changed, previousCurrents, cpName);
+                event.setTotalCurrent(index.getTotalCurrent());
+                event.commit();
+            }
         }
-        statePersister.safeState(getChargingPoints());
     }
 
     /**
-     * Sets the current of CPs which are loading the longest time to slow charging current.
+     * Records the currents the cars actually draw. The readings are validated and merged per CP without taking the
+     * monitor of the live state, so a high rate of meter values does not slow down plug events. They take effect with
+     * the next plug event or {@link #rebalance()}.
+     *
+     * @param meterValues readings of the meters of the CPs
+     * @throws CpNotFoundException if one of the readings refers to a CP that is not configured, none is recorded then.
      */
-    private void throttleByLoadingTime() {
-        // order plugged CPs by charging time ascending
-        final List<ChargingPoint> chargingPointsSortedByAge = this.chargingPoints.values().stream()
-                .filter(cp -> cp.isPlugged() && cp.getCurrent() > lowCurrent)
-                .sorted(Comparator.comparingLong(ChargingPoint::getPlugInTimestamp))
-                .collect(Collectors.toList());
+    public void recordMeterValues(final List<MeterValue> meterValues) {
+        meterValues.forEach(meterValue -> checkCP(meterValue.getCpName()));
+        meterValueStore.record(meterValues);
+    }
 
-        for (ChargingPoint cp : chargingPointsSortedByAge) {
-            if (currentSum() + highCurrent > maxCurrent) {
-                LOGGER.debug("Throttling {} to {}A", cp.getName(), lowCurrent);
-                cp.setCurrent(lowCurrent);
-            } else {
-                break;
+    /**
+     * Redistributes the currents according to the latest meter values: CPs whose cars ramp up again are clawed back
+     * by throttling the cars which are loading the longest time, and current left unused is handed to slow CPs.
+     */
+    public void rebalance() {
+        final PlugEvent event = new PlugEvent();
+        event.begin();
+        final long waitStart = System.nanoTime();
+        synchronized (this) {
+            event.setWaitForMonitor(System.nanoTime() - waitStart);
+            final List<ChargingPoint> changed = distributor.rebalance(chargingPoints);
+            if (changed.isEmpty()) {
+                return;
+            }
+            snapshot = null;
+            index.recordPreviousCurrents();
+            changed.forEach(index::update);
+            final Map<String, Integer> previousCurrents = index.stopRecordingPreviousCurrents();
+            statePersister.safeChanges(copies(changed), this::getChargingPoints);
+            if (event.shouldCommit()) {
+                event.setAction("rebalance");
+                countTransitions(event, changed, previousCurrents, null);
+                event.setTotalCurrent(index.getTotalCurrent());
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Reschedules the currents by the demands of the drivers, as the cars needing fast charging to get their energy in
+     * time change while they charge. Does nothing if the currents are assigned by plug-in order.
+     */
+    public void reschedule() {
+        if (departureScheduler == null) {
+            return;
+        }
+        final PlugEvent event = new PlugEvent();
+        event.begin();
+        final long waitStart = System.nanoTime();
+        synchronized (this) {
+            event.setWaitForMonitor(System.nanoTime() - waitStart);
+            final List<ChargingPoint> changed = departureScheduler.solve(distributor, clock.millis());
+            if (changed.isEmpty()) {
+                return;
+            }
+            snapshot = null;
+            index.recordPreviousCurrents();
+            changed.forEach(index::update);
+            final Map<String, Integer> previousCurrents = index.stopRecordingPreviousCurrents();
+            statePersister.safeChanges(copies(changed), this::getChargingPoints);
+            if (event.shouldCommit()) {
+                event.setAction("reschedule");
+                countTransitions(event, changed, previousCurrents, null);
+                event.setTotalCurrent(index.getTotalCurrent());
+                event.commit();
             }
         }
     }
 
     /**
-     * Sets then current of CPs which are loading the shortest time to high charging current.
+     * Returns the CPs matching the given query. The query is answered from indexes which are updated with every change,
+     * so its cost depends on the number of matching CPs, not on the size of the park.
+     *
+     * @param query the filters to apply
+     * @return List of the matching CPs with their statuses
      */
-    private void boostByLoadingTime() {
-        // order plugged CPs by charging time descending
-        final List<ChargingPoint> chargingPointsSortedByAge = this.chargingPoints.values().stream()
-                .filter(cp -> cp.isPlugged() && cp.getCurrent() < highCurrent)
-                .sorted(Comparator.comparingLong(ChargingPoint::getPlugInTimestamp))
-                .collect(Collectors.toList());
+    public List<ChargingPoint> query(final ParkQuery query) {
+        return index.query(query, clock.millis());
+    }
+
+    /**
+     * Applies hypothetical events to a copy of the actual state and returns the resulting CPs. Neither the actual
+     * state nor the persisted one is touched, and the monitor of the live state is only held to take a new snapshot
+     * once after each change, so simulations don't block plug events. With a different max. current the copy is
+     * redistributed under it before the events are applied.
+     * <p>
+     * The snapshot is shared, but every simulation copies all CPs of it and distributes the events without the indexes
+     * of the live state, so a simulation costs O(n log n) for a park of n CPs. That is fine for what-if questions of
+     * operators, but not for a high rate of requests on large parks.
+     *
+     * @param events     events to apply in the given order
+     * @param maxCurrent max. available current in total in Ampere to simulate with, null to use the configured one
+     * @return List of CPs with the statuses they would have after the events
+     * @throws CpNotFoundException             if one of the events refers to a CP that is not configured.
+     * @throws SimulationNotSupportedException if the currents are scheduled by departure, as the simulation only
+     *                                         follows the plug-in order
+     */
+    public List<ChargingPoint> simulate(final List<ParkEvent> events, final Integer maxCurrent) {
+        if (departureScheduler != null) {
+            throw new SimulationNotSupportedException("Simulations follow the plug-in order only and are not available "
+                    + "with scheduling by departure");
+        }
+        final CurrentDistributor simulationDistributor = maxCurrent != null
+                ? distributor.withMaxCurrent(maxCurrent)
+                : distributor;
+        final Map<String, ChargingPoint> simulatedState = snapshot().values().stream()
+                .collect(Collectors.toMap(ChargingPoint::getName, ChargingPoint::copy));
+        final WaitingQueue simulatedQueue = new WaitingQueue(simulatedState.values());
+        long simulatedSequence = nextPlugInSequence(simulatedState.values());
+        if (maxCurrent != null) {
+            // the actual allocation may not fit the simulated max. current, even before any event
+            simulationDistributor.redistribute(simulatedState, simulatedQueue);
+        }
 
-        for (ChargingPoint cp : chargingPointsSortedByAge) {
-            if (currentSum() - lowCurrent + highCurrent <= maxCurrent) {
-                LOGGER.info("Boosting {} to {}A", cp.getName(), highCurrent);
-                cp.setCurrent(highCurrent);
+        for (ParkEvent event : events) {
+            final ChargingPoint chargingPoint = simulatedState.get(event.getCpName());
+            if (chargingPoint == null) {
+                throw new CpNotFoundException(event.getCpName());
+            }
+            if (event.getType() == ParkEvent.Type.PLUG_IN) {
+                simulationDistributor.plugIn(simulatedState, simulatedQueue, chargingPoint, clock.millis(), simulatedSequence++);
             } else {
-                break;
+                simulationDistributor.plugOff(simulatedState, simulatedQueue, chargingPoint);
+            }
+        }
+        return new ArrayList<>(simulatedState.values());
+    }
+
+    /**
+     * Returns the plug-in sequence following the highest one of the given CPs, so that the order of plug-ins is
+     * deterministic even if they happen within the same millisecond.
+     *
+     * @param chargingPoints CPs to continue the sequence of
+     * @return the next plug-in sequence
+     */
+    private static long nextPlugInSequence(final Collection<ChargingPoint> chargingPoints) {
+        return chargingPoints.stream().mapToLong(ChargingPoint::getPlugInSequence).max().orElse(0L) + 1;
+    }
+
+    /**
+     * Returns an immutable copy of the actual state. The copy is shared by all readers until the next change, so it
+     * is only taken once per change and only if somebody asks for it.
+     *
+     * @return Map of CP-name to a copy of the {@link ChargingPoint}
+     */
+    private Map<String, ChargingPoint> snapshot() {
+        Map<String, ChargingPoint> currentSnapshot = snapshot;
+        if (currentSnapshot == null) {
+            synchronized (this) {
+                currentSnapshot = snapshot;
+                if (currentSnapshot == null) {
+                    currentSnapshot = ImmutableMap.copyOf(Maps.transformValues(chargingPoints, ChargingPoint::copy));
+                    snapshot = currentSnapshot;
+                }
             }
         }
+        return currentSnapshot;
     }
 
     /**
@@ -181,6 +403,26 @@ public class RequestHandler {
         return chargingPoints.get(cpName).getCurrent();
     }
 
+    /**
+     * Returns the interval after which the given CP should poll its allowed current again. It is short if the current
+     * of the CP would change with the next plug-in or plug-off and long if it is stable.
+     *
+     * @param cpName Name of the CP
+     * @return the suggested poll interval
+     * @throws CpNotFoundException if the given name is not configured.
+     */
+    public Duration getNextPollInterval(final String cpName) {
+        checkCP(cpName);
+        return pollIntervalAdvisor.nextPollInterval(cpName, index, distributor);
+    }
+
+    /**
+     * @return the durations of the startup phases, e.g. reading the persisted state
+     */
+    public StartupReport getStartupReport() {
+        return startupReport;
+    }
+
     /**
      * Returns the actual List of CPs with there statuses.
      *
@@ -190,11 +432,43 @@ public class RequestHandler {
         return chargingPoints.values().stream().map(ChargingPoint::copy).collect(Collectors.toList());
     }
 
-    private int currentSum() {
-        return chargingPoints.values().stream()
-                .filter(ChargingPoint::isPlugged)
-                .mapToInt(ChargingPoint::getCurrent)
-                .sum();
+    /**
+     * The CPs whose current changed when scheduling by departure: the plugged CP and those the scheduler changed,
+     * the changes of the distributor in between are either kept by the scheduler or undone.
+     */
+    private static List<ChargingPoint> union(final ChargingPoint plugged, final List<ChargingPoint> scheduled) {
+        final Set<ChargingPoint> union = new LinkedHashSet<>();
+        union.add(plugged);
+        union.addAll(scheduled);
+        return new ArrayList<>(union);
+    }
+
+    /**
+     * Counts the CPs which dropped to the slow charging current and those which rose above it with an event. Cars
+     * promoted from waiting to slow charging count as neither, and neither does the CP the event is about.
+     */
+    private void countTransitions(final PlugEvent event, final List<ChargingPoint> changed,
+                                  final Map<String, Integer> previousCurrents, final String cpName) {
+        final int lowCurrent = distributor.getLowCurrent();
+        int throttled = 0;
+        int boosted = 0;
+        for (ChargingPoint cp : changed) {
+            final Integer previous = previousCurrents.get(cp.getName());
+            if (previous == null || cp.getName().equals(cpName)) {
+                continue;
+            }
+            if (previous > lowCurrent && cp.getCurrent() == lowCurrent) {
+                throttled++;
+            } else if (previous <= lowCurrent && cp.getCurrent() > lowCurrent) {
+                boosted++;
+            }
+        }
+        event.setThrottled(throttled);
+        event.setBoosted(boosted);
+    }
+
+    private static List<ChargingPoint> copies(final Collection<ChargingPoint> chargingPoints) {
+        return chargingPoints.stream().map(ChargingPoint::copy).collect(Collectors.toList());
     }
 
     /**
@@ -0,0 +1,49 @@
+package com.carpark.manager.service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Times the phases of the startup, e.g. reading the persisted state and building the indexes, to see which of them
+ * dominates the restart window.
+ */
+public class StartupReport {
+
+    private final Map<String, Duration> phases = new LinkedHashMap<>();
+    private final long start = System.nanoTime();
+    private long phaseStart = start;
+
+    /**
+     * Ends the actual phase and starts the next one.
+     *
+     * @param name name of the phase that ended
+     */
+    public void phase(final String name) {
+        final long now = System.nanoTime();
+        phases.merge(name, Duration.ofNanos(now - phaseStart), Duration::plus);
+        phaseStart = now;
+    }
+
+    /**
+     * @return the durations of the phases in the order they ended
+     */
+    public Map<String, Duration> getPhases() {
+        return Collections.unmodifiableMap(phases);
+    }
+
+    /**
+     * @return the duration from the start to the end of the last phase
+     */
+    public Duration getTotal() {
+        return Duration.ofNanos(phaseStart - start);
+    }
+
+    public String toString() {
+        return getTotal().toMillis() + "ms " + phases.entrySet().stream()
+                .map(phase -> phase.getKey() + " " + phase.getValue().toMillis() + "ms")
+                .collect(Collectors.joining(", ", "(", ")"));
+    }
+}
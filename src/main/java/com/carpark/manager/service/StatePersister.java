@@ -5,6 +5,7 @@ import com.carpark.manager.domain.ChargingPoint;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * Persists the current state of the application and can read it back.
@@ -12,10 +13,11 @@ import java.util.Optional;
 public interface StatePersister {
 
     /**
-     * Read the old state of thes application back if possible. If no state can be recovered, an empty Optional is
-     * retured.
+     * Read the old state of thes application back if possible. If no state was persisted yet, an empty Optional is
+     * retured. A state that exists but can't be read is no reason to start over, as writing a new one would destroy it.
      *
      * @return Optional that is filled with the state if any was found to recover from
+     * @throws IllegalStateException if a state was found, but could not be read
      */
     Optional<Map<String, ChargingPoint>> readState();
 
@@ -25,4 +27,14 @@ public interface StatePersister {
      * @param currentState List of the curren CPs
      */
     void safeState(final List<ChargingPoint> currentState);
+
+    /**
+     * Persists the changes of a single event. Persisters which can't write single CPs persist the whole state instead.
+     *
+     * @param changedChargingPoints copies of the CPs which changed with the event
+     * @param currentState          supplies the List of all current CPs, only called if the whole state is needed
+     */
+    default void safeChanges(final List<ChargingPoint> changedChargingPoints, final Supplier<List<ChargingPoint>> currentState) {
+        safeState(currentState.get());
+    }
 }
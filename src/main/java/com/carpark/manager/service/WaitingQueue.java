@@ -0,0 +1,61 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * The cars waiting for current because the max. current was not sufficient when they plugged in, in the order they
+ * plugged in. Adding, removing and promoting the next waiting car take logarithmic time.
+ * <p>
+ * The queue holds the CPs themselves, so the plug-in time and sequence of a CP must not change while it is queued.
+ * It is not thread safe.
+ */
+public class WaitingQueue {
+
+    private final NavigableSet<ChargingPoint> waiting = new TreeSet<>(ChargingPoint.BY_PLUG_IN_ORDER
+            .thenComparing(ChargingPoint::getName));
+
+    /**
+     * Creates an empty queue.
+     */
+    public WaitingQueue() {
+    }
+
+    /**
+     * Creates a queue of the waiting CPs among the given ones, e.g. to continue after a restart.
+     *
+     * @param chargingPoints CPs to take the waiting ones from
+     */
+    public WaitingQueue(final Collection<ChargingPoint> chargingPoints) {
+        chargingPoints.stream().filter(ChargingPoint::isWaiting).forEach(waiting::add);
+    }
+
+    public void add(final ChargingPoint chargingPoint) {
+        waiting.add(chargingPoint);
+    }
+
+    public boolean remove(final ChargingPoint chargingPoint) {
+        return waiting.remove(chargingPoint);
+    }
+
+    /**
+     * Removes the CP which is waiting the longest time.
+     *
+     * @return the removed CP or null if no car is waiting
+     */
+    public ChargingPoint pollFirst() {
+        return waiting.pollFirst();
+    }
+
+    public boolean isEmpty() {
+        return waiting.isEmpty();
+    }
+
+    public int size() {
+        return waiting.size();
+    }
+}
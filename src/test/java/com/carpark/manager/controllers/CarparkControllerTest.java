@@ -1,18 +1,31 @@
 package com.carpark.manager.controllers;
 
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.ParkQuery;
 import com.carpark.manager.service.RequestHandler;
+import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -41,6 +54,43 @@ public class CarparkControllerTest {
     }
 
 
+    @Test
+    public void shouldPassDemandOfTheDriverOnPlugIn() throws Exception {
+        // GIVEN
+
+        // WHEN
+        final ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.put("/cp/plugin/" + CP_NAME)
+                .param("energyKwh", "30.5")
+                .param("departure", "2019-02-05T08:00:00Z"));
+
+        // THEN
+        resultActions
+                .andDo(print())
+                .andExpect(status().is2xxSuccessful());
+        verify(requestHandler).plugIn(eq(CP_NAME), argThat(demand -> demand.getEnergyKwh().get() == 30.5
+                && demand.getDepartureTimestamp().get() == 1549353600000L));
+    }
+
+
+    @Test
+    public void shouldRejectPlugInWithInvalidDemand() throws Exception {
+        // WHEN
+        final ResultActions nonPositiveEnergy = mockMvc.perform(MockMvcRequestBuilders.put("/cp/plugin/" + CP_NAME)
+                .param("energyKwh", "-5"));
+        final ResultActions malformedDeparture = mockMvc.perform(MockMvcRequestBuilders.put("/cp/plugin/" + CP_NAME)
+                .param("departure", "tomorrow"));
+
+        // THEN
+        nonPositiveEnergy
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("energyKwh has to be greater 0"));
+        malformedDeparture
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        verify(requestHandler, never()).plugIn(any(), any());
+    }
+
     @Test
     public void shouldReturnSuccessOnPlugOff() throws Exception {
         // GIVEN
@@ -54,5 +104,123 @@ public class CarparkControllerTest {
                 .andExpect(status().is2xxSuccessful());
     }
 
+    @Test
+    public void shouldReturnCurrentWithNextPollHint() throws Exception {
+        // GIVEN
+        when(requestHandler.getAllowedCurrent(CP_NAME)).thenReturn(20);
+        when(requestHandler.getNextPollInterval(CP_NAME)).thenReturn(Duration.ofSeconds(30));
+
+        // WHEN
+        final ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.get("/cp/current/" + CP_NAME));
+
+        // THEN
+        resultActions
+                .andDo(print())
+                .andExpect(status().is2xxSuccessful())
+                .andExpect(content().string("20"))
+                .andExpect(header().string(CarparkController.NEXT_POLL_HEADER, "30"));
+    }
+
+    @Test
+    public void shouldPassFiltersToQuery() throws Exception {
+        // GIVEN
+        when(requestHandler.query(any())).thenReturn(ImmutableList.of(new ChargingPoint(CP_NAME)));
+
+        // WHEN
+        final ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get("/park/query?status=OCCUPIED&currentLevel=LOW&pluggedLongerThan=600"));
+
+        // THEN
+        resultActions
+                .andDo(print())
+                .andExpect(status().is2xxSuccessful())
+                .andExpect(content().string("CP01 AVAILABLE\n"));
+        verify(requestHandler).query(argThat(query -> query.getStatus().get() == ParkQuery.Status.OCCUPIED
+                && query.getCurrentLevel().get() == ParkQuery.CurrentLevel.LOW
+                && query.getPluggedLongerThan().get().equals(Duration.ofMinutes(10))));
+    }
+
+    @Test
+    public void shouldReturnSimulatedReport() throws Exception {
+        // GIVEN
+        when(requestHandler.simulate(any(), any())).thenReturn(ImmutableList.of(new ChargingPoint("CP02"), new ChargingPoint(CP_NAME)));
+
+        // WHEN
+        final ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.post("/park/simulation")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"maxCurrent\": 80, \"events\": [{\"type\": \"PLUG_IN\", \"cpName\": \"" + CP_NAME + "\"}]}"));
+
+        // THEN
+        resultActions
+                .andDo(print())
+                .andExpect(status().is2xxSuccessful())
+                .andExpect(content().string("CP01 AVAILABLE\nCP02 AVAILABLE\n"));
+        verify(requestHandler).simulate(argThat(events -> events.size() == 1 && events.get(0).getCpName().equals(CP_NAME)),
+                eq(80));
+    }
+
+    @Test
+    public void shouldRejectSimulationWithoutCurrent() throws Exception {
+        // WHEN
+        final ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.post("/park/simulation")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"maxCurrent\": 0, \"events\": []}"));
+
+        // THEN
+        resultActions
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        verify(requestHandler, never()).simulate(any(), any());
+    }
+
+    @Test
+    public void shouldRecordMeterValues() throws Exception {
+        // GIVEN
+
+        // WHEN
+        final ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.put("/cp/meter")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"cpName\": \"" + CP_NAME + "\", \"current\": 4.2}, "
+                        + "{\"cpName\": \"CP02\", \"current\": 19.5, \"timestamp\": 1549321017325}]"));
+
+        // THEN
+        resultActions
+                .andDo(print())
+                .andExpect(status().is2xxSuccessful())
+                .andExpect(content().string("OK, successfully recorded 2 meter values"));
+        verify(requestHandler).recordMeterValues(argThat(meterValues -> meterValues.size() == 2
+                && meterValues.get(0).getCpName().equals(CP_NAME) && !meterValues.get(0).getTimestamp().isPresent()
+                && meterValues.get(1).getTimestamp().equals(Optional.of(1549321017325L))));
+    }
+
+    @Test
+    public void shouldRejectMeterValueWithoutCurrent() throws Exception {
+        // WHEN
+        final ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.put("/cp/meter")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"cpName\": \"" + CP_NAME + "\", \"timestamp\": 1549321017325}]"));
+
+        // THEN a missing current is not taken for 0A
+        resultActions
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        verify(requestHandler, never()).recordMeterValues(any());
+    }
+
+    @Test
+    public void shouldReportQueuePositionOfWaitingCPs() throws Exception {
+        // GIVEN
+        when(requestHandler.getChargingPoints()).thenReturn(ImmutableList.of(new ChargingPoint(CP_NAME, true, 0, 2L, 7L),
+                new ChargingPoint("CP02", true, 10, 1L, 1L), new ChargingPoint("CP03", true, 0, 2L, 6L)));
+
+        // WHEN
+        final ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.get("/park/report"));
+
+        // THEN
+        resultActions
+                .andDo(print())
+                .andExpect(status().is2xxSuccessful())
+                .andExpect(content().string("CP01 WAITING 2\nCP02 OCCUPIED 10A\nCP03 WAITING 1\n"));
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package com.carpark.manager.replay;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class ReplayEngineTest {
+
+    private static final String EVENT_LOG = "# recorded at CP gateway\n" +
+            "1549321017000 PLUG_IN CP1\n" +
+            "1549321017000 PLUG_IN CP2\n" +
+            "1549321017000 PLUG_IN CP3\n" +
+            "\n" +
+            "1549321017001 PLUG_IN CP4\n" +
+            "1549321017002 PLUG_IN CP5\n" +
+            "1549321017003 PLUG_OFF CP3\n";
+
+    @Test
+    public void shouldWriteAllocationTimeline() throws IOException {
+        // GIVEN
+        ReplayEngine engine = new ReplayEngine(40, 20, 10);
+        StringWriter timeline = new StringWriter();
+
+        // WHEN
+        long events = engine.replay(new BufferedReader(new StringReader(EVENT_LOG)), timeline);
+
+        // THEN plug-ins of the same millisecond are ordered by their position in the log, CP5 waits for CP3 to leave
+        assertThat(events).isEqualTo(6);
+        assertThat(timeline.toString()).isEqualTo("1549321017000 PLUG_IN CP1 CP1=20A\n" +
+                "1549321017000 PLUG_IN CP2 CP2=20A\n" +
+                "1549321017000 PLUG_IN CP3 CP3=20A CP1=10A CP2=10A\n" +
+                "1549321017001 PLUG_IN CP4 CP4=10A CP3=10A\n" +
+                "1549321017002 PLUG_IN CP5 CP5=0A\n" +
+                "1549321017003 PLUG_OFF CP3 CP3=0A CP5=10A\n");
+    }
+
+    @Test
+    public void shouldBeDeterministic() throws IOException {
+        // GIVEN
+        StringWriter first = new StringWriter();
+        StringWriter second = new StringWriter();
+
+        // WHEN
+        new ReplayEngine(40, 20, 10).replay(new BufferedReader(new StringReader(EVENT_LOG)), first);
+        new ReplayEngine(40, 20, 10).replay(new BufferedReader(new StringReader(EVENT_LOG)), second);
+
+        // THEN
+        assertThat(first.toString()).isEqualTo(second.toString());
+    }
+
+    @Test
+    public void shouldIgnoreLineEndingsAroundCpNames() throws IOException {
+        // GIVEN
+        StringWriter unix = new StringWriter();
+        StringWriter windows = new StringWriter();
+
+        // WHEN
+        new ReplayEngine(40, 20, 10).replay(new BufferedReader(new StringReader(EVENT_LOG)), unix);
+        new ReplayEngine(40, 20, 10).replay(new BufferedReader(new StringReader(
+                EVENT_LOG.replace("\n", "\r\n").replace("CP3\r\n", "CP3 \t\r\n"))), windows);
+
+        // THEN
+        assertThat(windows.toString()).isEqualTo(unix.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMalformedEvent() throws IOException {
+        new ReplayEngine(40, 20, 10).replay(new BufferedReader(new StringReader("1549321017000 PLUGGED CP1\n")), new StringWriter());
+    }
+}
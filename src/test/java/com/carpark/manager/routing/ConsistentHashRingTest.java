@@ -0,0 +1,65 @@
+package com.carpark.manager.routing;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class ConsistentHashRingTest {
+
+    @Test
+    public void shouldSpreadKeysOverAllNodes() {
+        // GIVEN
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of("node1", "node2", "node3"), 100);
+
+        // WHEN
+        Map<String, Integer> keysPerNode = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            keysPerNode.merge(ring.nodeFor("park" + i), 1, Integer::sum);
+        }
+
+        // THEN every node gets a fair share
+        assertThat(keysPerNode).containsOnlyKeys("node1", "node2", "node3");
+        assertThat(keysPerNode.values()).allMatch(keys -> keys > 600 && keys < 1400);
+    }
+
+    @Test
+    public void shouldOnlyMoveKeysToTheAddedNode() {
+        // GIVEN
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of("node1", "node2"), 100);
+
+        // WHEN
+        ConsistentHashRing newRing = ring.withNode("node3");
+
+        // THEN
+        int moved = 0;
+        for (int i = 0; i < 3000; i++) {
+            String before = ring.nodeFor("park" + i);
+            String after = newRing.nodeFor("park" + i);
+            if (!before.equals(after)) {
+                assertThat(after).isEqualTo("node3");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(600, 1400);
+        assertThat(newRing.getNodes()).containsExactly("node1", "node2", "node3");
+    }
+
+    @Test
+    public void shouldMapKeysTheSameWayOnEveryRing() {
+        // GIVEN
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of("node1", "node2"), 100);
+
+        // WHEN
+        ConsistentHashRing sameRing = new ConsistentHashRing(ImmutableList.of("node2", "node1"), 100);
+
+        // THEN
+        for (int i = 0; i < 100; i++) {
+            assertThat(sameRing.nodeFor("park" + i)).isEqualTo(ring.nodeFor("park" + i));
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.carpark.manager.routing;
+
+import com.carpark.manager.domain.ParkAssignment;
+import com.carpark.manager.exceptions.CpNotFoundException;
+import com.carpark.manager.exceptions.NodeUnavailableException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+
+public class ParkRouterTest {
+
+    private static final String NODE1 = "http://node1";
+    private static final String NODE2 = "http://node2";
+    private static final Map<String, ParkAssignment> PARKS = ImmutableMap.of(
+            "north", new ParkAssignment(40, 20, 10, ImmutableList.of("N1", "N2"), null),
+            "south", new ParkAssignment(40, 20, 10, ImmutableList.of("S1", "S2"), null));
+    private final RestTemplate restTemplate = new RestTemplate();
+    private MockRestServiceServer server;
+    private ParkRouter router;
+    private String northNode;
+    private String southNode;
+
+    @Before
+    public void setUp() {
+        restTemplate.setErrorHandler(new ResponseErrorHandler() {
+            @Override
+            public boolean hasError(final ClientHttpResponse response) {
+                return false;
+            }
+
+            @Override
+            public void handleError(final ClientHttpResponse response) {
+            }
+        });
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of(NODE1, NODE2), 100);
+        router = new ParkRouter(restTemplate, PARKS, ring);
+        northNode = ring.nodeFor("north");
+        southNode = ring.nodeFor("south");
+    }
+
+    @Test
+    public void shouldForwardToNodeOwningThePark() {
+        // GIVEN
+        server.expect(requestTo(northNode + "/parks/north/cp/plugin/N1")).andExpect(method(HttpMethod.PUT))
+                .andRespond(withSuccess("OK, successfully plugged in N1", MediaType.TEXT_PLAIN));
+
+        // WHEN
+        ResponseEntity<String> response = router.plugIn("N1");
+
+        // THEN
+        assertThat(response.getBody()).isEqualTo("OK, successfully plugged in N1");
+        server.verify();
+    }
+
+    @Test
+    public void shouldAssignParkWhenNodeDoesNotHostItYet() {
+        // GIVEN
+        server.expect(requestTo(southNode + "/parks/south/cp/current/S2"))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+        server.expect(requestTo(southNode + "/parks/south")).andExpect(method(HttpMethod.PUT))
+                .andExpect(content().string("{\"maxCurrent\":40,\"highCurrent\":20,\"lowCurrent\":10,"
+                        + "\"chargingPoints\":[\"S1\",\"S2\"],\"state\":null}"))
+                .andRespond(withSuccess("OK, hosting park south", MediaType.TEXT_PLAIN));
+        server.expect(requestTo(southNode + "/parks/south/cp/current/S2"))
+                .andRespond(withSuccess("0", MediaType.TEXT_PLAIN));
+
+        // WHEN
+        ResponseEntity<String> response = router.getAllowedCurrent("S2");
+
+        // THEN
+        assertThat(response.getBody()).isEqualTo("0");
+        server.verify();
+    }
+
+    @Test
+    public void shouldPassThroughErrorsOfTheNode() {
+        // GIVEN
+        server.expect(requestTo(northNode + "/parks/north/cp/plugoff/N2"))
+                .andRespond(withStatus(HttpStatus.BAD_REQUEST));
+
+        // WHEN
+        ResponseEntity<String> response = router.plugOff("N2");
+
+        // THEN
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void shouldRejectUnknownCp() {
+        // WHEN / THEN
+        assertThatThrownBy(() -> router.plugIn("X1")).isInstanceOf(CpNotFoundException.class);
+    }
+
+    @Test
+    public void shouldFailWhenNodeIsNotAvailable() {
+        // GIVEN
+        server.expect(requestTo(northNode + "/parks/north/cp/plugin/N1")).andRespond(request -> {
+            throw new ResourceAccessException("Connection refused");
+        });
+
+        // WHEN / THEN
+        assertThatThrownBy(() -> router.plugIn("N1")).isInstanceOf(NodeUnavailableException.class);
+    }
+
+    @Test
+    public void shouldMergeReportsOfAllParks() {
+        // GIVEN parks are reported in the order of their names
+        server.expect(requestTo(northNode + "/parks/north/report"))
+                .andRespond(withSuccess("N1 OCCUPIED 20A\nN2 AVAILABLE\n", MediaType.TEXT_PLAIN));
+        server.expect(requestTo(southNode + "/parks/south/report"))
+                .andRespond(withSuccess("S1 AVAILABLE\nS2 AVAILABLE\n", MediaType.TEXT_PLAIN));
+
+        // WHEN
+        String report = router.getReport();
+
+        // THEN
+        assertThat(report).isEqualTo("N1 OCCUPIED 20A\nN2 AVAILABLE\nS1 AVAILABLE\nS2 AVAILABLE\n");
+    }
+
+    @Test
+    public void shouldMoveParksWithTheirStateToAddedNode() {
+        // GIVEN a third node taking over at least one of the parks
+        String node3 = findNodeTakingOver("north");
+        String state = "[{\"name\":\"N1\",\"plugged\":true,\"current\":20,\"plugInTimestamp\":5,\"plugInSequence\":1}]";
+        server.expect(requestTo(northNode + "/parks/north")).andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(state, MediaType.APPLICATION_JSON));
+        server.expect(requestTo(node3 + "/parks/north")).andExpect(method(HttpMethod.PUT))
+                .andExpect(content().string(containsString("\"state\":" + state)))
+                .andRespond(withSuccess("OK, hosting park north", MediaType.TEXT_PLAIN));
+        server.expect(requestTo(northNode + "/parks/north")).andExpect(method(HttpMethod.DELETE))
+                .andRespond(withSuccess(state, MediaType.APPLICATION_JSON));
+        boolean southMoves = !new ConsistentHashRing(ImmutableList.of(NODE1, NODE2, node3), 100)
+                .nodeFor("south").equals(southNode);
+        if (southMoves) {
+            server.expect(requestTo(southNode + "/parks/south")).andExpect(method(HttpMethod.GET))
+                    .andRespond(withSuccess("[]", MediaType.APPLICATION_JSON));
+            server.expect(requestTo(node3 + "/parks/south")).andExpect(method(HttpMethod.PUT))
+                    .andRespond(withSuccess("OK, hosting park south", MediaType.TEXT_PLAIN));
+            server.expect(requestTo(southNode + "/parks/south")).andExpect(method(HttpMethod.DELETE))
+                    .andRespond(withSuccess("[]", MediaType.APPLICATION_JSON));
+        }
+
+        // WHEN
+        Map<String, String> moved = router.addNode(node3);
+
+        // THEN
+        assertThat(moved).containsEntry("north", node3);
+        assertThat(router.getOwners()).containsEntry("north", node3);
+        server.verify();
+    }
+
+    @Test
+    public void shouldRecoverParkOnPreviousOwnerBeforeMovingIt() {
+        // GIVEN the previous owner restarted and does not host the park yet
+        String node3 = findNodeTakingOver("north", "south");
+        String state = "[{\"name\":\"N1\",\"plugged\":true,\"current\":20,\"plugInTimestamp\":5,\"plugInSequence\":1}]";
+        server.expect(requestTo(northNode + "/parks/north")).andExpect(method(HttpMethod.GET))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+        server.expect(requestTo(northNode + "/parks/north")).andExpect(method(HttpMethod.PUT))
+                .andExpect(content().string(containsString("\"state\":null")))
+                .andRespond(withSuccess("OK, hosting park north", MediaType.TEXT_PLAIN));
+        server.expect(requestTo(northNode + "/parks/north")).andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(state, MediaType.APPLICATION_JSON));
+        server.expect(requestTo(node3 + "/parks/north")).andExpect(method(HttpMethod.PUT))
+                .andExpect(content().string(containsString("\"state\":" + state)))
+                .andRespond(withSuccess("OK, hosting park north", MediaType.TEXT_PLAIN));
+        server.expect(requestTo(northNode + "/parks/north")).andExpect(method(HttpMethod.DELETE))
+                .andRespond(withSuccess(state, MediaType.APPLICATION_JSON));
+        server.expect(requestTo(southNode + "/parks/south")).andExpect(method(HttpMethod.GET))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+        server.expect(requestTo(southNode + "/parks/south")).andExpect(method(HttpMethod.PUT))
+                .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        // WHEN
+        Throwable thrown = catchThrowable(() -> router.addNode(node3));
+
+        // THEN the persisted state is handed over, a park that can't be recovered is not moved empty
+        assertThat(thrown).isInstanceOf(NodeUnavailableException.class);
+        assertThat(router.getOwners()).containsEntry("north", node3).containsEntry("south", southNode);
+        server.verify();
+    }
+
+    @Test
+    public void shouldKeepParkWithPreviousOwnerIfNewOwnerFailsToHostIt() {
+        // GIVEN a third node taking over both parks, failing to host the second one
+        String node3 = findNodeTakingOver("north", "south");
+        server.expect(requestTo(northNode + "/parks/north")).andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess("[]", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(node3 + "/parks/north")).andExpect(method(HttpMethod.PUT))
+                .andRespond(withSuccess("OK, hosting park north", MediaType.TEXT_PLAIN));
+        server.expect(requestTo(northNode + "/parks/north")).andExpect(method(HttpMethod.DELETE))
+                .andRespond(withSuccess("[]", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(southNode + "/parks/south")).andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess("[{\"name\":\"S1\",\"plugged\":true,\"current\":20,\"plugInTimestamp\":5,"
+                        + "\"plugInSequence\":1}]", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(node3 + "/parks/south")).andExpect(method(HttpMethod.PUT))
+                .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+        server.expect(requestTo(southNode + "/parks/south/cp/current/S1"))
+                .andRespond(withSuccess("20", MediaType.TEXT_PLAIN));
+
+        // WHEN
+        Throwable thrown = catchThrowable(() -> router.addNode(node3));
+        ResponseEntity<String> response = router.getAllowedCurrent("S1");
+
+        // THEN the park which could not be moved is neither released nor routed to the new node
+        assertThat(thrown).isInstanceOf(NodeUnavailableException.class);
+        assertThat(router.getOwners()).containsEntry("north", node3).containsEntry("south", southNode);
+        assertThat(response.getBody()).isEqualTo("20");
+        server.verify();
+    }
+
+    private String findNodeTakingOver(final String... parks) {
+        ConsistentHashRing ring = new ConsistentHashRing(ImmutableList.of(NODE1, NODE2), 100);
+        for (int i = 3; ; i++) {
+            String node = "http://node" + i;
+            ConsistentHashRing withNode = ring.withNode(node);
+            if (Arrays.stream(parks).allMatch(park -> withNode.nodeFor(park).equals(node))) {
+                return node;
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class CurrentDistributorTest {
+
+    private final Map<String, ChargingPoint> chargingPoints = new LinkedHashMap<>();
+    private final WaitingQueue waitingQueue = new WaitingQueue();
+
+    private ChargingPoint cp(final String name) {
+        return chargingPoints.computeIfAbsent(name, ChargingPoint::new);
+    }
+
+    @Test
+    public void shouldReturnChangedCPs() {
+        // GIVEN
+        CurrentDistributor distributor = new CurrentDistributor(40, 20, 10);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+
+        // WHEN
+        List<ChargingPoint> changed = distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+
+        // THEN
+        assertThat(changed).extracting(ChargingPoint::toString)
+                .containsExactly("CP3 OCCUPIED 20A", "CP1 OCCUPIED 10A", "CP2 OCCUPIED 10A");
+    }
+
+    @Test
+    public void shouldQueuePlugInWithoutThrottlingWhenMaxCurrentIsNotSufficient() {
+        // GIVEN a high current less than twice the low current, so a fast CP can remain when the park is full
+        CurrentDistributor distributor = new CurrentDistributor(35, 20, 15);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+
+        // WHEN
+        List<ChargingPoint> changed = distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+
+        // THEN
+        assertThat(changed).extracting(ChargingPoint::toString).containsExactly("CP3 WAITING");
+        assertThat(cp("CP1").getCurrent()).isEqualTo(15);
+        assertThat(cp("CP2").getCurrent()).isEqualTo(20);
+        assertThat(waitingQueue.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldPromoteCarWaitingLongestOnPlugOff() {
+        // GIVEN
+        CurrentDistributor distributor = new CurrentDistributor(20, 20, 10);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP4"), 1L, 4L);
+
+        // WHEN
+        List<ChargingPoint> changed = distributor.plugOff(chargingPoints, waitingQueue, cp("CP1"));
+
+        // THEN
+        assertThat(changed).extracting(ChargingPoint::toString)
+                .containsExactly("CP1 AVAILABLE", "CP3 OCCUPIED 10A");
+        assertThat(cp("CP4").isWaiting()).isTrue();
+        assertThat(waitingQueue.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldLeaveQueueWhenWaitingCarPlugsOff() {
+        // GIVEN
+        CurrentDistributor distributor = new CurrentDistributor(20, 20, 10);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP4"), 1L, 4L);
+
+        // WHEN
+        distributor.plugOff(chargingPoints, waitingQueue, cp("CP3"));
+        distributor.plugOff(chargingPoints, waitingQueue, cp("CP1"));
+
+        // THEN
+        assertThat(cp("CP3").isPlugged()).isFalse();
+        assertThat(cp("CP4").toString()).isEqualTo("CP4 OCCUPIED 10A");
+        assertThat(waitingQueue.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldBoostWithCurrentTheCarsDoNotDraw() {
+        // GIVEN CP1 only draws 4A of its allowance
+        CurrentDistributor distributor = new CurrentDistributor(40, 20, 10,
+                cp -> cp.getName().equals("CP1") ? Math.min(cp.getCurrent(), 4) : cp.getCurrent());
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+
+        // WHEN
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+
+        // THEN all allowances exceed the max. current, but the reserved currents don't
+        assertThat(chargingPoints.values()).extracting(ChargingPoint::toString)
+                .containsExactly("CP1 OCCUPIED 20A", "CP2 OCCUPIED 10A", "CP3 OCCUPIED 20A");
+    }
+
+    @Test
+    public void shouldClawBackWhenCarRampsUp() {
+        // GIVEN
+        final int[] drawOfCP1 = {4};
+        CurrentDistributor distributor = new CurrentDistributor(40, 20, 10,
+                cp -> cp.getName().equals("CP1") ? Math.min(cp.getCurrent(), drawOfCP1[0]) : cp.getCurrent());
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+
+        // WHEN
+        drawOfCP1[0] = 20;
+        List<ChargingPoint> changed = distributor.rebalance(chargingPoints);
+
+        // THEN
+        assertThat(changed).extracting(ChargingPoint::toString).containsExactly("CP1 OCCUPIED 10A");
+        assertThat(chargingPoints.values().stream().mapToInt(ChargingPoint::getCurrent).sum()).isLessThanOrEqualTo(40);
+    }
+
+    @Test
+    public void shouldBoostOnRebalanceWhenCarDrawsLess() {
+        // GIVEN
+        final int[] drawOfCP1 = {20};
+        CurrentDistributor distributor = new CurrentDistributor(40, 20, 10,
+                cp -> cp.getName().equals("CP1") ? Math.min(cp.getCurrent(), drawOfCP1[0]) : cp.getCurrent());
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+
+        // WHEN
+        drawOfCP1[0] = 4;
+        List<ChargingPoint> changed = distributor.rebalance(chargingPoints);
+
+        // THEN
+        assertThat(changed).extracting(ChargingPoint::toString).containsExactly("CP1 OCCUPIED 20A");
+    }
+
+    @Test
+    public void shouldNotChangeAnythingOnRebalanceWithoutMeterValues() {
+        // GIVEN
+        CurrentDistributor distributor = new CurrentDistributor(40, 20, 10);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+
+        // WHEN
+        List<ChargingPoint> changed = distributor.rebalance(chargingPoints);
+
+        // THEN
+        assertThat(changed).isEmpty();
+    }
+
+    @Test
+    public void shouldRedistributeUnderLowerMaxCurrent() {
+        // GIVEN
+        CurrentDistributor distributor = new CurrentDistributor(60, 20, 10);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+
+        // WHEN
+        distributor.withMaxCurrent(25).redistribute(chargingPoints, waitingQueue);
+
+        // THEN
+        assertThat(chargingPoints.values()).extracting(ChargingPoint::toString)
+                .containsExactly("CP1 OCCUPIED 10A", "CP2 OCCUPIED 10A", "CP3 WAITING");
+        assertThat(waitingQueue.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldPromoteAndBoostOnRedistributionUnderHigherMaxCurrent() {
+        // GIVEN
+        CurrentDistributor distributor = new CurrentDistributor(20, 20, 10);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP1"), 1L, 1L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP2"), 1L, 2L);
+        distributor.plugIn(chargingPoints, waitingQueue, cp("CP3"), 1L, 3L);
+
+        // WHEN
+        distributor.withMaxCurrent(50).redistribute(chargingPoints, waitingQueue);
+
+        // THEN
+        assertThat(chargingPoints.values().stream().mapToInt(ChargingPoint::getCurrent).sum()).isEqualTo(50);
+        assertThat(waitingQueue.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldDistributeTheSameWithIndex() {
+        // GIVEN a second park with the same CPs kept in an index
+        CurrentDistributor distributor = new CurrentDistributor(100, 20, 10);
+        Map<String, ChargingPoint> indexedChargingPoints = new LinkedHashMap<>();
+        WaitingQueue indexedWaitingQueue = new WaitingQueue();
+        ParkIndex index = new ParkIndex(10);
+        Random random = new Random(42);
+
+        for (long sequence = 1; sequence <= 10_000; sequence++) {
+            // WHEN
+            String name = "CP" + random.nextInt(15);
+            ChargingPoint indexed = indexedChargingPoints.computeIfAbsent(name, ChargingPoint::new);
+            List<ChargingPoint> changed;
+            List<ChargingPoint> changedWithIndex;
+            if (cp(name).isPlugged()) {
+                changed = distributor.plugOff(chargingPoints, waitingQueue, cp(name));
+                changedWithIndex = distributor.plugOff(indexedChargingPoints, indexedWaitingQueue, index, indexed);
+            } else {
+                changed = distributor.plugIn(chargingPoints, waitingQueue, cp(name), 1L, sequence);
+                changedWithIndex = distributor.plugIn(indexedChargingPoints, indexedWaitingQueue, index, indexed, 1L, sequence);
+            }
+
+            // THEN
+            assertThat(changedWithIndex).extracting(ChargingPoint::toString)
+                    .containsExactlyElementsOf(changed.stream().map(ChargingPoint::toString).collect(Collectors.toList()));
+            assertThat(index.getTotalCurrent())
+                    .isEqualTo(chargingPoints.values().stream().mapToInt(ChargingPoint::getCurrent).sum());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingDemand;
+import com.carpark.manager.domain.ChargingPoint;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+
+public class DepartureSchedulerTest {
+
+    private static final long NOW = 1549321017325L;
+    // room for one fast CP with three cars plugged in
+    private final CurrentDistributor distributor = new CurrentDistributor(40, 20, 10);
+    private final DepartureScheduler scheduler = new DepartureScheduler(690);
+    private long sequence;
+
+    private ChargingPoint plugIn(final String name, final int current, final ChargingDemand demand) {
+        ChargingPoint cp = new ChargingPoint(name);
+        cp.setCurrent(current);
+        cp.plugIn(NOW, ++sequence);
+        scheduler.plugIn(cp, demand, NOW);
+        return cp;
+    }
+
+    private static ChargingDemand demand(final double energyKwh, final Duration untilDeparture) {
+        return new ChargingDemand(energyKwh, NOW + untilDeparture.toMillis());
+    }
+
+    @Test
+    public void shouldGiveFastChargingToCarWhichWouldNotMakeItWithSlowCharging() {
+        // GIVEN slow charging delivers 13.8kWh in 2 hours
+        ChargingPoint cp1 = plugIn("CP1", 10, demand(30, Duration.ofHours(2)));
+        ChargingPoint cp2 = plugIn("CP2", 10, ChargingDemand.NONE);
+        ChargingPoint cp3 = plugIn("CP3", 20, demand(5, Duration.ofHours(4)));
+
+        // WHEN
+        List<ChargingPoint> changed = scheduler.solve(distributor, NOW);
+
+        // THEN
+        assertThat(changed).containsExactlyInAnyOrder(cp1, cp3);
+        assertThat(cp1.getCurrent()).isEqualTo(20);
+        assertThat(cp2.getCurrent()).isEqualTo(10);
+        assertThat(cp3.getCurrent()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldServeEarliestDepartureFirst() {
+        // GIVEN
+        ChargingPoint cp1 = plugIn("CP1", 10, demand(40, Duration.ofHours(3)));
+        ChargingPoint cp2 = plugIn("CP2", 10, demand(40, Duration.ofHours(2)));
+        ChargingPoint cp3 = plugIn("CP3", 10, ChargingDemand.NONE);
+
+        // WHEN
+        scheduler.solve(distributor, NOW);
+
+        // THEN
+        assertThat(cp1.getCurrent()).isEqualTo(10);
+        assertThat(cp2.getCurrent()).isEqualTo(20);
+        assertThat(cp3.getCurrent()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldHandOnFastChargingOnceTheCarWillMakeIt() {
+        // GIVEN slow charging delivers 13.8kWh in 2 hours, fast charging 13.8kWh per hour
+        ChargingPoint cp1 = plugIn("CP1", 10, demand(15, Duration.ofHours(2)));
+        plugIn("CP2", 10, ChargingDemand.NONE);
+        ChargingPoint cp3 = plugIn("CP3", 10, ChargingDemand.NONE);
+        scheduler.solve(distributor, NOW);
+        assertThat(cp1.getCurrent()).isEqualTo(20);
+
+        // WHEN
+        List<ChargingPoint> changed = scheduler.solve(distributor, NOW + Duration.ofMinutes(20).toMillis());
+
+        // THEN 4.6kWh are delivered, the remaining 10.4kWh come in time with slow charging
+        assertThat(scheduler.getDeliveredKwh("CP1")).isCloseTo(4.6, within(0.001));
+        assertThat(changed).containsExactlyInAnyOrder(cp1, cp3);
+        assertThat(cp1.getCurrent()).isEqualTo(10);
+        assertThat(cp3.getCurrent()).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldPreferLatestPlugInAmongCarsWithoutDeparture() {
+        // GIVEN
+        ChargingPoint cp1 = plugIn("CP1", 20, ChargingDemand.NONE);
+        ChargingPoint cp2 = plugIn("CP2", 10, ChargingDemand.NONE);
+        ChargingPoint cp3 = plugIn("CP3", 10, ChargingDemand.NONE);
+
+        // WHEN
+        scheduler.solve(distributor, NOW);
+
+        // THEN like the plug-in order policy
+        assertThat(cp1.getCurrent()).isEqualTo(10);
+        assertThat(cp2.getCurrent()).isEqualTo(10);
+        assertThat(cp3.getCurrent()).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldNotPreferOverdueCars() {
+        // GIVEN
+        ChargingPoint cp1 = plugIn("CP1", 20, demand(40, Duration.ofMinutes(30)));
+        ChargingPoint cp2 = plugIn("CP2", 10, demand(40, Duration.ofHours(3)));
+        plugIn("CP3", 10, demand(1, Duration.ofHours(3)));
+
+        // WHEN
+        scheduler.solve(distributor, NOW + Duration.ofHours(1).toMillis());
+
+        // THEN
+        assertThat(cp1.getCurrent()).isEqualTo(10);
+        assertThat(cp2.getCurrent()).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldLeaveWaitingCarsAlone() {
+        // GIVEN
+        ChargingPoint cp1 = plugIn("CP1", 10, demand(40, Duration.ofHours(3)));
+        ChargingPoint cp2 = plugIn("CP2", 10, ChargingDemand.NONE);
+        ChargingPoint cp3 = plugIn("CP3", 0, demand(40, Duration.ofHours(1)));
+
+        // WHEN
+        scheduler.solve(distributor, NOW);
+
+        // THEN with two admitted cars both charge fast
+        assertThat(cp1.getCurrent()).isEqualTo(20);
+        assertThat(cp2.getCurrent()).isEqualTo(20);
+        assertThat(cp3.getCurrent()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldForgetCarOnPlugOff() {
+        // GIVEN
+        plugIn("CP1", 10, demand(40, Duration.ofHours(3)));
+        ChargingPoint cp2 = plugIn("CP2", 10, ChargingDemand.NONE);
+        ChargingPoint cp3 = plugIn("CP3", 10, ChargingDemand.NONE);
+        plugIn("CP4", 10, ChargingDemand.NONE);
+
+        // WHEN
+        scheduler.plugOff("CP1");
+        scheduler.solve(distributor, NOW);
+
+        // THEN
+        assertThat(scheduler.getDeliveredKwh("CP1")).isZero();
+        assertThat(cp2.getCurrent()).isEqualTo(10);
+        assertThat(cp3.getCurrent()).isEqualTo(10);
+    }
+}
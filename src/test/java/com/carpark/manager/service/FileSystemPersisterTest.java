@@ -1,20 +1,24 @@
 package com.carpark.manager.service;
 
 import com.carpark.manager.domain.ChargingPoint;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Resources;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
 
 public class FileSystemPersisterTest {
@@ -68,4 +72,122 @@ public class FileSystemPersisterTest {
         // THEN directories should be created
         assertThat(directoryPath.resolve("state.json").toFile().exists()).isTrue();
     }
-}
\ No newline at end of file
+
+
+    @Test
+    public void shouldReadWrittenStateSkippingUnknownFields() throws IOException {
+        // GIVEN
+        Path directoryPath = Paths.get("target/streamed");
+        Files.createDirectories(directoryPath);
+        Files.write(directoryPath.resolve("state.json"), ("[{\"name\":\"CP01\",\"plugged\":true,\"current\":20,"
+                + "\"vendor\":{\"id\":[1,2]},\"plugInTimestamp\":1549321017325,\"plugInSequence\":7},"
+                + "{\"name\":\"CP02\"}]").getBytes(StandardCharsets.UTF_8));
+        FileSystemPersister persister = new FileSystemPersister(directoryPath);
+
+        // WHEN
+        Optional<Map<String, ChargingPoint>> stateOptional = persister.readState();
+
+        // THEN
+        assertThat(stateOptional.isPresent()).isTrue();
+        assertThat(stateOptional.get().values()).extracting(ChargingPoint::toString)
+                .containsExactlyInAnyOrder("CP01 OCCUPIED 20A", "CP02 AVAILABLE");
+        assertThat(stateOptional.get().get("CP01").getPlugInSequence()).isEqualTo(7L);
+    }
+
+    @Test
+    public void shouldRoundTripState() {
+        // GIVEN
+        FileSystemPersister persister = new FileSystemPersister(Paths.get("target/round-trip"));
+        List<ChargingPoint> state = ImmutableList.of(new ChargingPoint("CP01", true, 0, 1549321017325L, 3L),
+                new ChargingPoint("CP02"));
+
+        // WHEN
+        persister.safeState(state);
+        Optional<Map<String, ChargingPoint>> stateOptional = persister.readState();
+
+        // THEN
+        assertThat(stateOptional.get().values()).extracting(ChargingPoint::toString)
+                .containsExactlyInAnyOrder("CP01 WAITING", "CP02 AVAILABLE");
+        assertThat(stateOptional.get().get("CP01").getPlugInTimestamp()).isEqualTo(1549321017325L);
+    }
+
+    @Test
+    public void shouldFailOnTruncatedStateFileInsteadOfReportingNoState() throws IOException {
+        // GIVEN
+        Path directoryPath = Paths.get("target/truncated");
+        Files.createDirectories(directoryPath);
+        Files.write(directoryPath.resolve("state.json"),
+                "[{\"name\":\"CP01\",\"plugged\":true,\"cur".getBytes(StandardCharsets.UTF_8));
+        FileSystemPersister persister = new FileSystemPersister(directoryPath);
+
+        // WHEN
+        Throwable thrown = catchThrowable(persister::readState);
+
+        // THEN the file must not be taken for absent and overwritten with a new state
+        assertThat(thrown).isInstanceOf(IllegalStateException.class).hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void shouldFailOnInvalidValuesInsteadOfReadingThemLeniently() throws IOException {
+        // GIVEN
+        Path directoryPath = Paths.get("target/invalid");
+        Files.createDirectories(directoryPath);
+        Files.write(directoryPath.resolve("state.json"),
+                "[{\"name\":\"CP01\",\"plugged\":true,\"current\":\"fast\"}]".getBytes(StandardCharsets.UTF_8));
+        FileSystemPersister persister = new FileSystemPersister(directoryPath);
+
+        // WHEN
+        Throwable thrown = catchThrowable(persister::readState);
+
+        // THEN
+        assertThat(thrown).isInstanceOf(IllegalStateException.class).hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void shouldFailOnArrayElementOtherThanCP() throws IOException {
+        // GIVEN
+        Path directoryPath = Paths.get("target/non-object");
+        Files.createDirectories(directoryPath);
+        Files.write(directoryPath.resolve("state.json"),
+                "[{\"name\":\"CP01\"},42,{\"name\":\"CP02\"}]".getBytes(StandardCharsets.UTF_8));
+        FileSystemPersister persister = new FileSystemPersister(directoryPath);
+
+        // WHEN
+        Throwable thrown = catchThrowable(persister::readState);
+
+        // THEN the CPs after the element must not be dropped silently
+        assertThat(thrown).isInstanceOf(IllegalStateException.class).hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void shouldReplaceStateFileWithoutLeavingTemporaryFile() throws IOException {
+        // GIVEN
+        Path directoryPath = Paths.get("target/replaced");
+        Files.createDirectories(directoryPath);
+        Files.write(directoryPath.resolve("state.json"), "[{\"name\":\"CP01\"}]".getBytes(StandardCharsets.UTF_8));
+        FileSystemPersister persister = new FileSystemPersister(directoryPath);
+
+        // WHEN
+        persister.safeState(ImmutableList.of(new ChargingPoint("CP02")));
+
+        // THEN
+        assertThat(persister.readState().get().keySet()).containsExactly("CP02");
+        assertThat(directoryPath.resolve("state.json.tmp").toFile().exists()).isFalse();
+    }
+
+    @Test
+    public void shouldKeepPreviousStateFileIfWritingFails() throws IOException {
+        // GIVEN
+        Path directoryPath = Paths.get("target/kept");
+        Files.createDirectories(directoryPath.resolve("state.json.tmp"));
+        Files.write(directoryPath.resolve("state.json.tmp").resolve("blocker"), new byte[0]);
+        Files.write(directoryPath.resolve("state.json"), "[{\"name\":\"CP01\"}]".getBytes(StandardCharsets.UTF_8));
+        FileSystemPersister persister = new FileSystemPersister(directoryPath);
+
+        // WHEN the temporary file can't be written, as a directory is in the way
+        persister.safeState(ImmutableList.of(new ChargingPoint("CP02")));
+
+        // THEN
+        assertThat(persister.readState().get().keySet()).containsExactly("CP01");
+    }
+}
@@ -0,0 +1,130 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+
+public class H2PersisterTest {
+
+    private final Path directoryPath = Paths.get("target/h2-state");
+    private H2Persister persister;
+
+    @Before
+    public void setUp() throws IOException {
+        Files.deleteIfExists(directoryPath.resolve("state.mv.db"));
+        Files.deleteIfExists(directoryPath.resolve("state.trace.db"));
+        persister = new H2Persister(directoryPath);
+    }
+
+    @After
+    public void tearDown() {
+        persister.close();
+    }
+
+    @Test
+    public void shouldReturnEmptyOptional() {
+        // WHEN
+        Optional<Map<String, ChargingPoint>> stateOptional = persister.readState();
+
+        // THEN no Exception, but just empty Optional
+        assertThat(stateOptional.isPresent()).isFalse();
+    }
+
+    @Test
+    public void shouldFailIfStateCanNotBeRead() {
+        // GIVEN
+        persister.close();
+
+        // WHEN
+        Throwable thrown = catchThrowable(persister::readState);
+
+        // THEN a failed read is not taken for an empty table
+        assertThat(thrown).isInstanceOf(IllegalStateException.class).hasCauseInstanceOf(SQLException.class);
+    }
+
+    @Test
+    public void shouldReadStateBackAfterReopening() {
+        // GIVEN
+        persister.safeState(ImmutableList.of(new ChargingPoint("CP01"), new ChargingPoint("CP02")));
+        persister.close();
+        persister = new H2Persister(directoryPath);
+
+        // WHEN
+        Optional<Map<String, ChargingPoint>> stateOptional = persister.readState();
+
+        // THEN
+        assertThat(stateOptional.isPresent()).isTrue();
+        assertThat(stateOptional.get().keySet()).containsExactlyInAnyOrder("CP01", "CP02");
+        assertThat(stateOptional.get().get("CP01").isPlugged()).isFalse();
+    }
+
+    @Test
+    public void shouldOnlyUpdateChangedCPs() {
+        // GIVEN
+        persister.safeState(ImmutableList.of(new ChargingPoint("CP01"), new ChargingPoint("CP02")));
+        ChargingPoint changed = new ChargingPoint("CP02", true, 20, 1549321017325L, 7L);
+
+        // WHEN
+        persister.safeChanges(ImmutableList.of(changed), () -> {
+            throw new AssertionError("whole state must not be needed");
+        });
+
+        // THEN
+        Map<String, ChargingPoint> state = persister.readState().get();
+        assertThat(state).hasSize(2);
+        assertThat(state.get("CP01").isPlugged()).isFalse();
+        assertThat(state.get("CP02").isPlugged()).isTrue();
+        assertThat(state.get("CP02").getCurrent()).isEqualTo(20);
+        assertThat(state.get("CP02").getPlugInTimestamp()).isEqualTo(1549321017325L);
+        assertThat(state.get("CP02").getPlugInSequence()).isEqualTo(7L);
+    }
+
+    @Test
+    public void shouldWriteWholeStateIfChangesFail() {
+        // GIVEN
+        persister.safeState(ImmutableList.of(new ChargingPoint("CP01"), new ChargingPoint("CP02")));
+        ChargingPoint changed = new ChargingPoint("CP02", true, 20, 1549321017325L, 7L);
+        ChargingPoint invalid = new ChargingPoint(Strings.repeat("X", 256));
+
+        // WHEN the name of one CP exceeds the column, so the transaction is rolled back
+        persister.safeChanges(ImmutableList.of(changed, invalid),
+                () -> ImmutableList.of(new ChargingPoint("CP01"), changed));
+
+        // THEN
+        Map<String, ChargingPoint> state = persister.readState().get();
+        assertThat(state.keySet()).containsExactlyInAnyOrder("CP01", "CP02");
+        assertThat(state.get("CP02").getCurrent()).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldWriteWholeStateWithNextChangesIfRewriteFails() {
+        // GIVEN
+        persister.safeState(ImmutableList.of(new ChargingPoint("CP01"), new ChargingPoint("CP02")));
+        ChargingPoint changed = new ChargingPoint("CP02", true, 20, 1549321017325L, 7L);
+        ChargingPoint invalid = new ChargingPoint(Strings.repeat("X", 256));
+        persister.safeChanges(ImmutableList.of(changed, invalid), () -> ImmutableList.of(changed, invalid));
+
+        // WHEN
+        persister.safeChanges(ImmutableList.of(), () -> ImmutableList.of(new ChargingPoint("CP01"), changed));
+
+        // THEN
+        Map<String, ChargingPoint> state = persister.readState().get();
+        assertThat(state.keySet()).containsExactlyInAnyOrder("CP01", "CP02");
+        assertThat(state.get("CP02").getCurrent()).isEqualTo(20);
+    }
+}
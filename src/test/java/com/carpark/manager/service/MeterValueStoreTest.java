@@ -0,0 +1,112 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.MeterValue;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class MeterValueStoreTest {
+
+    private static final long NOW = 1549321017325L;
+    private final MeterValueStore store = new MeterValueStore(Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC), 2,
+            Duration.ofSeconds(60));
+
+    private static ChargingPoint pluggedCP(final String name, final int current, final long plugInTimestamp) {
+        return new ChargingPoint(name, true, current, plugInTimestamp, 1L);
+    }
+
+    @Test
+    public void shouldReserveDrawnCurrentPlusSafetyMargin() {
+        // GIVEN
+        store.record(ImmutableList.of(new MeterValue("CP1", 4.2, null)));
+
+        // WHEN
+        int reserved = store.reservedCurrent(pluggedCP("CP1", 20, NOW - 1000));
+
+        // THEN
+        assertThat(reserved).isEqualTo(7);
+    }
+
+    @Test
+    public void shouldReserveAtMostAllowedCurrent() {
+        // GIVEN
+        store.record(ImmutableList.of(new MeterValue("CP1", 19.5, null)));
+
+        // WHEN
+        int reserved = store.reservedCurrent(pluggedCP("CP1", 20, NOW - 1000));
+
+        // THEN
+        assertThat(reserved).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldKeepLatestReadingRegardlessOfArrivalOrder() {
+        // GIVEN
+        store.record(ImmutableList.of(new MeterValue("CP1", 3d, NOW - 10), new MeterValue("CP1", 12d, NOW - 20)));
+
+        // WHEN
+        int reserved = store.reservedCurrent(pluggedCP("CP1", 20, NOW - 1000));
+
+        // THEN
+        assertThat(reserved).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldReserveAllowedCurrentWithoutValidReading() {
+        // GIVEN a reading of the previous car and a stale one
+        store.record(ImmutableList.of(new MeterValue("CP1", 3d, NOW - 2000), new MeterValue("CP2", 3d, NOW - 61000)));
+
+        // WHEN
+        int reservedCP1 = store.reservedCurrent(pluggedCP("CP1", 20, NOW - 1000));
+        int reservedCP2 = store.reservedCurrent(pluggedCP("CP2", 10, NOW - 100000));
+        int reservedCP3 = store.reservedCurrent(pluggedCP("CP3", 20, NOW - 1000));
+
+        // THEN
+        assertThat(reservedCP1).isEqualTo(20);
+        assertThat(reservedCP2).isEqualTo(10);
+        assertThat(reservedCP3).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldReserveNothingForFreeCP() {
+        // GIVEN
+        store.record(ImmutableList.of(new MeterValue("CP1", 3d, null)));
+
+        // WHEN
+        int reserved = store.reservedCurrent(new ChargingPoint("CP1"));
+
+        // THEN
+        assertThat(reserved).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldTakeReadingFromTheFutureAsReadNow() {
+        // GIVEN
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).thenReturn(NOW);
+        MeterValueStore store = new MeterValueStore(clock, 2, Duration.ofSeconds(60));
+        store.record(ImmutableList.of(new MeterValue("CP1", 3d, NOW + Duration.ofDays(1).toMillis())));
+        when(clock.millis()).thenReturn(NOW + 1000);
+        store.record(ImmutableList.of(new MeterValue("CP1", 12d, null)));
+        ChargingPoint cp = pluggedCP("CP1", 20, NOW - 1000);
+
+        // WHEN
+        int reserved = store.reservedCurrent(cp);
+        when(clock.millis()).thenReturn(NOW + 1000 + 61000);
+        int reservedAfterMaxAge = store.reservedCurrent(cp);
+
+        // THEN the reading from the future neither wins over later ones nor stays valid forever
+        assertThat(reserved).isEqualTo(14);
+        assertThat(reservedAfterMaxAge).isEqualTo(20);
+    }
+}
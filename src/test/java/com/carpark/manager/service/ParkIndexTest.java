@@ -0,0 +1,149 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.ParkQuery;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.carpark.manager.domain.ParkQuery.CurrentLevel.HIGH;
+import static com.carpark.manager.domain.ParkQuery.CurrentLevel.LOW;
+import static com.carpark.manager.domain.ParkQuery.Status.AVAILABLE;
+import static com.carpark.manager.domain.ParkQuery.Status.OCCUPIED;
+import static com.carpark.manager.domain.ParkQuery.Status.WAITING;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+
+public class ParkIndexTest {
+
+    private static final long NOW = 1549321017325L;
+    private final ParkIndex index = new ParkIndex(10);
+    private final ChargingPoint cp1 = new ChargingPoint("CP1");
+    private final ChargingPoint cp2 = new ChargingPoint("CP2");
+    private final ChargingPoint cp3 = new ChargingPoint("CP3");
+    private final ChargingPoint cp4 = new ChargingPoint("CP4");
+
+    @Before
+    public void setUp() {
+        plugIn(cp1, 10, NOW - 3_600_000L, 1);
+        plugIn(cp2, 20, NOW - 60_000L, 2);
+        plugIn(cp3, 20, NOW - 7_200_000L, 3);
+        index.update(cp4);
+    }
+
+    private void plugIn(final ChargingPoint cp, final int current, final long timestamp, final long sequence) {
+        cp.setCurrent(current);
+        cp.plugIn(timestamp, sequence);
+        index.update(cp);
+    }
+
+    private List<String> query(final ParkQuery.Status status, final ParkQuery.CurrentLevel currentLevel, final Duration pluggedLongerThan) {
+        final List<ChargingPoint> result = index.query(new ParkQuery(status, currentLevel, pluggedLongerThan), NOW);
+        return result.stream().map(ChargingPoint::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    public void shouldReturnAllCPsWithoutFilter() {
+        assertThat(query(null, null, null)).containsExactlyInAnyOrder("CP1", "CP2", "CP3", "CP4");
+    }
+
+    @Test
+    public void shouldFilterByStatus() {
+        assertThat(query(AVAILABLE, null, null)).containsExactly("CP4");
+        assertThat(query(OCCUPIED, null, null)).containsExactlyInAnyOrder("CP1", "CP2", "CP3");
+    }
+
+    @Test
+    public void shouldFilterByCurrentLevel() {
+        assertThat(query(null, LOW, null)).containsExactly("CP1");
+        assertThat(query(OCCUPIED, HIGH, null)).containsExactly("CP3", "CP2");
+        assertThat(query(AVAILABLE, HIGH, null)).isEmpty();
+    }
+
+    @Test
+    public void shouldFilterByPlugAge() {
+        assertThat(query(null, null, Duration.ofMinutes(30))).containsExactlyInAnyOrder("CP1", "CP3");
+        assertThat(query(null, HIGH, Duration.ofMinutes(30))).containsExactly("CP3");
+        assertThat(query(null, null, Duration.ofHours(3))).isEmpty();
+    }
+
+    @Test
+    public void shouldRecordCurrentsBeforeFirstUpdate() {
+        // GIVEN
+        index.recordPreviousCurrents();
+
+        // WHEN
+        cp2.setCurrent(10);
+        index.update(cp2);
+        cp2.setCurrent(0);
+        index.update(cp2);
+        cp4.plugIn(NOW, 4);
+        cp4.setCurrent(10);
+        index.update(cp4);
+        final Map<String, Integer> recorded = index.stopRecordingPreviousCurrents();
+        cp1.setCurrent(20);
+        index.update(cp1);
+
+        // THEN
+        assertThat(recorded).containsOnly(entry("CP2", 20), entry("CP4", 0));
+        assertThat(index.stopRecordingPreviousCurrents()).isEmpty();
+    }
+
+    @Test
+    public void shouldMoveUpdatedCPs() {
+        // WHEN
+        cp3.setCurrent(10);
+        index.update(cp3);
+        cp2.plugOff();
+        index.update(cp2);
+
+        // THEN
+        assertThat(query(null, LOW, null)).containsExactly("CP3", "CP1");
+        assertThat(query(null, HIGH, null)).isEmpty();
+        assertThat(query(AVAILABLE, null, null)).containsExactly("CP2", "CP4");
+    }
+
+    @Test
+    public void shouldIndexWaitingCPsSeparately() {
+        // GIVEN
+        plugIn(cp4, 0, NOW - 120_000L, 4);
+
+        // WHEN
+        List<String> waiting = query(WAITING, null, null);
+
+        // THEN
+        assertThat(waiting).containsExactly("CP4");
+        assertThat(query(OCCUPIED, null, null)).containsExactlyInAnyOrder("CP1", "CP2", "CP3");
+        assertThat(query(null, LOW, null)).containsExactly("CP1");
+        assertThat(query(WAITING, null, Duration.ofMinutes(1))).containsExactly("CP4");
+        assertThat(index.isAmongFirstPlugged(index.get("CP4"), 1)).isTrue();
+    }
+
+    @Test
+    public void shouldIndexRecoveredCPsAtOnce() {
+        // GIVEN
+        ParkIndex recovered = new ParkIndex(10, ImmutableList.of(cp1, cp2, cp3, cp4));
+
+        // WHEN
+        List<String> all = recovered.query(new ParkQuery(null, null, null), NOW).stream()
+                .map(ChargingPoint::getName).collect(Collectors.toList());
+
+        // THEN the same as indexing one by one
+        assertThat(all).containsExactlyElementsOf(query(null, null, null));
+        assertThat(recovered.getTotalCurrent()).isEqualTo(index.getTotalCurrent());
+
+        // WHEN
+        cp3.setCurrent(10);
+        recovered.update(cp3);
+
+        // THEN
+        assertThat(recovered.query(new ParkQuery(null, LOW, null), NOW)).extracting(ChargingPoint::getName)
+                .containsExactly("CP3", "CP1");
+    }
+}
@@ -0,0 +1,107 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.ParkAssignment;
+import com.carpark.manager.exceptions.ParkNotFoundException;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+public class ParkRegistryTest {
+
+    private static final ParkAssignment ASSIGNMENT = new ParkAssignment(40, 20, 10, ImmutableList.of("CP1", "CP2", "CP3"), null);
+    private final Path directoryPath = Paths.get("target/registry");
+    private final Clock clock = Clock.fixed(Instant.ofEpochMilli(1000L), ZoneOffset.UTC);
+    private ParkRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new ParkRegistry(directoryPath, FileSystemPersister::new, clock, PollIntervalAdvisor.DEFAULT);
+    }
+
+    @Test
+    public void shouldHostParkInItsOwnDirectory() {
+        // GIVEN
+        registry.host("north", ASSIGNMENT);
+
+        // WHEN
+        registry.withPark("north", requestHandler -> {
+            requestHandler.plugIn("CP1");
+            return null;
+        });
+
+        // THEN
+        assertThat(registry.<Integer>withPark("north", requestHandler -> requestHandler.getAllowedCurrent("CP1"))).isEqualTo(20);
+        assertThat(Files.exists(directoryPath.resolve("north"))).isTrue();
+        registry.release("north");
+    }
+
+    @Test
+    public void shouldHostParkOnlyOnce() {
+        // GIVEN
+        registry.host("north", ASSIGNMENT);
+
+        // WHEN
+        boolean hosted = registry.host("north", ASSIGNMENT);
+
+        // THEN
+        assertThat(hosted).isFalse();
+        registry.release("north");
+    }
+
+    @Test
+    public void shouldReleaseParkWithItsState() {
+        // GIVEN
+        registry.host("north", ASSIGNMENT);
+        registry.withPark("north", requestHandler -> {
+            requestHandler.plugIn("CP2");
+            return null;
+        });
+
+        // WHEN
+        List<ChargingPoint> state = registry.release("north");
+
+        // THEN the state goes with the park, nothing is left behind
+        assertThat(state).extracting(ChargingPoint::toString)
+                .containsExactlyInAnyOrder("CP1 AVAILABLE", "CP2 OCCUPIED 20A", "CP3 AVAILABLE");
+        assertThat(Files.exists(directoryPath.resolve("north"))).isFalse();
+        assertThatThrownBy(() -> registry.withPark("north", RequestHandler::getChargingPoints))
+                .isInstanceOf(ParkNotFoundException.class);
+    }
+
+    @Test
+    public void shouldHostParkWithStateOfPreviousNode() {
+        // GIVEN
+        registry.host("north", ASSIGNMENT);
+        registry.withPark("north", requestHandler -> {
+            requestHandler.plugIn("CP3");
+            return null;
+        });
+        List<ChargingPoint> state = registry.release("north");
+
+        // WHEN
+        registry.host("north", ASSIGNMENT.withState(state));
+
+        // THEN
+        assertThat(registry.<Integer>withPark("north", requestHandler -> requestHandler.getAllowedCurrent("CP3"))).isEqualTo(20);
+        registry.release("north");
+    }
+
+    @Test
+    public void shouldRejectParkNameLeavingTheDirectory() {
+        // WHEN / THEN
+        assertThatThrownBy(() -> registry.host("../north", ASSIGNMENT)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,125 @@
+package com.carpark.manager.service;
+
+import com.carpark.manager.domain.ChargingPoint;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class PollIntervalAdvisorTest {
+
+    private static final Duration MIN = Duration.ofSeconds(30);
+    private static final Duration DEFAULT = Duration.ofMinutes(2);
+    private static final Duration MAX = Duration.ofMinutes(10);
+    private final PollIntervalAdvisor advisor = new PollIntervalAdvisor(MIN, DEFAULT, MAX, 1);
+    private final CurrentDistributor distributor = new CurrentDistributor(60, 20, 10);
+    private final ParkIndex index = new ParkIndex(10);
+
+    private void plugIn(final String name, final int current, final long sequence) {
+        final ChargingPoint cp = new ChargingPoint(name);
+        cp.setCurrent(current);
+        cp.plugIn(1549321017325L, sequence);
+        index.update(cp);
+    }
+
+    private Duration nextPollInterval(final String name) {
+        return advisor.nextPollInterval(name, index, distributor);
+    }
+
+    @Test
+    public void shouldReturnDefaultForFreeCP() {
+        // GIVEN
+        index.update(new ChargingPoint("CP1"));
+
+        // THEN
+        assertThat(nextPollInterval("CP1")).isEqualTo(DEFAULT);
+    }
+
+    @Test
+    public void shouldBackOffWhileThereIsHeadroom() {
+        // GIVEN
+        plugIn("CP1", 20, 1);
+        plugIn("CP2", 20, 2);
+
+        // THEN the next car can charge fast without throttling anybody
+        assertThat(nextPollInterval("CP1")).isEqualTo(MAX);
+        assertThat(nextPollInterval("CP2")).isEqualTo(MAX);
+    }
+
+    @Test
+    public void shouldPollSoonWhenAboutToBeThrottled() {
+        // GIVEN
+        plugIn("CP1", 20, 1);
+        plugIn("CP2", 20, 2);
+        plugIn("CP3", 20, 3);
+
+        // THEN the next car throttles the two oldest CPs
+        assertThat(nextPollInterval("CP1")).isEqualTo(MIN);
+        assertThat(nextPollInterval("CP2")).isEqualTo(MIN);
+        assertThat(nextPollInterval("CP3")).isEqualTo(MAX);
+    }
+
+    @Test
+    public void shouldPollSoonWhenAboutToBeBoosted() {
+        // GIVEN
+        plugIn("CP1", 10, 1);
+        plugIn("CP2", 10, 2);
+        plugIn("CP3", 10, 3);
+        plugIn("CP4", 20, 4);
+        plugIn("CP5", 10, 5);
+
+        // THEN a slow car leaving frees enough for the oldest slow CP to be boosted
+        assertThat(nextPollInterval("CP1")).isEqualTo(MIN);
+        assertThat(nextPollInterval("CP2")).isEqualTo(MAX);
+        assertThat(nextPollInterval("CP5")).isEqualTo(MAX);
+    }
+
+    @Test
+    public void shouldPollSoonOnlyAtHeadOfWaitingQueue() {
+        // GIVEN
+        for (int i = 1; i <= 6; i++) {
+            plugIn("CP" + i, 10, i);
+        }
+        plugIn("CP7", 0, 7);
+        plugIn("CP8", 0, 8);
+
+        // THEN
+        assertThat(nextPollInterval("CP7")).isEqualTo(MIN);
+        assertThat(nextPollInterval("CP8")).isEqualTo(MAX);
+    }
+
+    @Test
+    public void shouldPollSoonWhenFastChargingRestsOnReclaimedHeadroom() {
+        // GIVEN
+        CurrentDistributor reclaiming = new CurrentDistributor(40, 20, 10, cp -> Math.min(cp.getCurrent(), 5));
+        plugIn("CP1", 20, 1);
+        plugIn("CP2", 20, 2);
+        plugIn("CP3", 10, 3);
+
+        // THEN fast CPs learn of a claw-back within the min. interval, slow CPs are not clawed back
+        assertThat(advisor.nextPollInterval("CP1", index, reclaiming)).isEqualTo(MIN);
+        assertThat(advisor.nextPollInterval("CP2", index, reclaiming)).isEqualTo(MIN);
+        assertThat(advisor.nextPollInterval("CP3", index, reclaiming)).isEqualTo(MAX);
+    }
+
+    @Test
+    public void shouldOnlyBackOffIfStableForTheExpectedEvents() {
+        // GIVEN
+        PollIntervalAdvisor twoEvents = new PollIntervalAdvisor(MIN, DEFAULT, MAX, 2);
+        CurrentDistributor larger = new CurrentDistributor(70, 20, 10);
+        plugIn("CP1", 20, 1);
+        plugIn("CP2", 20, 2);
+
+        // THEN the headroom covers one new car charging fast, a second one throttles the oldest fast CP
+        assertThat(advisor.nextPollInterval("CP1", index, larger)).isEqualTo(MAX);
+        assertThat(twoEvents.nextPollInterval("CP1", index, larger)).isEqualTo(MIN);
+        assertThat(twoEvents.nextPollInterval("CP2", index, larger)).isEqualTo(MAX);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveNumberOfEvents() {
+        new PollIntervalAdvisor(MIN, DEFAULT, MAX, 0);
+    }
+}
@@ -1,14 +1,35 @@
 package com.carpark.manager.service;
 
+import com.carpark.manager.domain.ChargingDemand;
 import com.carpark.manager.domain.ChargingPoint;
+import com.carpark.manager.domain.MeterValue;
+import com.carpark.manager.domain.ParkEvent;
+import com.carpark.manager.domain.ParkQuery;
+import com.carpark.manager.exceptions.CpNotFoundException;
+import com.carpark.manager.exceptions.SimulationNotSupportedException;
 import com.google.common.collect.ImmutableList;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.mock;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
 
 
 public class RequestHandlerTest {
@@ -17,12 +38,15 @@ public class RequestHandlerTest {
     private static final int HIGH_CURRENT = 20;
     private static final int LOW_CURRENT = 10;
     private final List<String> chargingPointList = ImmutableList.of("CP1", "CP2", "CP3", "CP4");
-    private final FileSystemPersister statePersister = mock(FileSystemPersister.class);
+    private final StatePersister statePersister = mock(StatePersister.class);
+    // all plug-ins happen within the same millisecond, so only the plug-in sequence orders them
+    private final Clock clock = Clock.fixed(Instant.ofEpochMilli(1549321017325L), ZoneOffset.UTC);
+    private final HandlerOptions options = HandlerOptions.DEFAULT.withClock(clock);
     private RequestHandler requestHandler;
 
     @Before
     public void setUp() {
-        requestHandler = new RequestHandler(chargingPointList, MAX_CURRENT, HIGH_CURRENT, LOW_CURRENT, statePersister);
+        requestHandler = new RequestHandler(chargingPointList, MAX_CURRENT, HIGH_CURRENT, LOW_CURRENT, statePersister, options);
     }
 
 
@@ -106,4 +130,373 @@ public class RequestHandlerTest {
         assertThat(requestHandler.getAllowedCurrent("CP2")).isEqualTo(0);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldOrderPlugInsOfTheSameMillisecondBySequence() {
+        // WHEN
+        requestHandler.plugIn("CP3");
+        requestHandler.plugIn("CP1");
+        requestHandler.plugIn("CP2");
+
+        // THEN
+        assertThat(requestHandler.getChargingPoints()).extracting(ChargingPoint::getPlugInTimestamp).containsOnly(1549321017325L, 0L);
+        assertThat(requestHandler.getAllowedCurrent("CP3")).isEqualTo(LOW_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP1")).isEqualTo(LOW_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP2")).isEqualTo(HIGH_CURRENT);
+    }
+
+    @Test
+    public void shouldPersistOnlyChangedCPs() {
+        // GIVEN
+        requestHandler.plugIn("CP1");
+        requestHandler.plugIn("CP2");
+
+        // WHEN
+        requestHandler.plugIn("CP3");
+
+        // THEN
+        verify(statePersister).safeChanges(argThat(changed -> changed.stream().map(ChargingPoint::toString)
+                .collect(Collectors.toList())
+                .equals(ImmutableList.of("CP3 OCCUPIED 20A", "CP1 OCCUPIED 10A", "CP2 OCCUPIED 10A"))), any());
+    }
+
+    @Test
+    public void shouldPersistCreatedStateOnFirstStart() {
+        verify(statePersister).safeState(argThat(state -> state.size() == chargingPointList.size()));
+    }
+
+    @Test
+    public void shouldFailStartupWithoutOverwritingUnreadableState() {
+        // GIVEN
+        StatePersister unreadable = mock(StatePersister.class);
+        when(unreadable.readState()).thenThrow(new IllegalStateException("Could not read state file"));
+
+        // WHEN
+        Throwable thrown = catchThrowable(() -> new RequestHandler(chargingPointList, MAX_CURRENT, HIGH_CURRENT,
+                LOW_CURRENT, unreadable, options));
+
+        // THEN
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+        verify(unreadable, never()).safeState(any());
+    }
+
+    @Test
+    public void shouldQueryIndexedCPs() {
+        // GIVEN
+        requestHandler.plugIn("CP1");
+        requestHandler.plugIn("CP2");
+        requestHandler.plugIn("CP3");
+        requestHandler.plugOff("CP2");
+
+        // WHEN
+        List<ChargingPoint> available = requestHandler.query(new ParkQuery(ParkQuery.Status.AVAILABLE, null, null));
+        List<ChargingPoint> fast = requestHandler.query(new ParkQuery(null, ParkQuery.CurrentLevel.HIGH, null));
+
+        // THEN
+        assertThat(available).extracting(ChargingPoint::getName).containsExactly("CP2", "CP4");
+        assertThat(fast).extracting(ChargingPoint::getName).containsExactly("CP1", "CP3");
+    }
+
+    @Test
+    public void shouldHandUnusedCurrentToOtherCarsAndClawItBack() {
+        // GIVEN
+        requestHandler = new RequestHandler(chargingPointList, MAX_CURRENT, HIGH_CURRENT, LOW_CURRENT, statePersister,
+                options.withMeterHeadroom(new MeterValueStore(clock, 2, Duration.ofSeconds(60))));
+        requestHandler.plugIn("CP1");
+        requestHandler.plugIn("CP2");
+        requestHandler.recordMeterValues(ImmutableList.of(new MeterValue("CP1", 3.5, null)));
+
+        // WHEN
+        requestHandler.plugIn("CP3");
+
+        // THEN
+        assertThat(requestHandler.getAllowedCurrent("CP1")).isEqualTo(HIGH_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP2")).isEqualTo(LOW_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP3")).isEqualTo(HIGH_CURRENT);
+        // the allowances exceed the max. current, so the fast CPs poll within the min. interval to learn of a claw-back
+        assertThat(requestHandler.getNextPollInterval("CP1")).isEqualTo(Duration.ofSeconds(30));
+        assertThat(requestHandler.getNextPollInterval("CP3")).isEqualTo(Duration.ofSeconds(30));
+
+        // WHEN
+        clearInvocations(statePersister);
+        requestHandler.recordMeterValues(ImmutableList.of(new MeterValue("CP1", 19.8, null)));
+        requestHandler.rebalance();
+
+        // THEN
+        assertThat(requestHandler.getAllowedCurrent("CP1")).isEqualTo(LOW_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP3")).isEqualTo(HIGH_CURRENT);
+        verify(statePersister).safeChanges(argThat(changed -> changed.size() == 1 && changed.get(0).getName().equals("CP1")),
+                any());
+    }
+
+    @Test
+    public void shouldGiveFastChargingToCarWhichNeedsItBeforeDeparture() {
+        // GIVEN
+        requestHandler = new RequestHandler(chargingPointList, MAX_CURRENT, HIGH_CURRENT, LOW_CURRENT, statePersister,
+                options.withDepartureScheduler(new DepartureScheduler(690)));
+        requestHandler.plugIn("CP1", new ChargingDemand(30d, clock.millis() + Duration.ofHours(2).toMillis()));
+        requestHandler.plugIn("CP2");
+
+        // WHEN
+        clearInvocations(statePersister);
+        requestHandler.plugIn("CP3");
+
+        // THEN the latest car only charges fast if there is room after the car leaving soon
+        assertThat(requestHandler.getAllowedCurrent("CP1")).isEqualTo(HIGH_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP2")).isEqualTo(LOW_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP3")).isEqualTo(LOW_CURRENT);
+        verify(statePersister).safeChanges(argThat(changed -> changed.size() == 2), any());
+    }
+
+    @Test
+    public void shouldKeepIndexInSyncWhenSchedulingByDeparture() {
+        // GIVEN
+        requestHandler = new RequestHandler(chargingPointList, 40, HIGH_CURRENT, LOW_CURRENT, statePersister,
+                options.withDepartureScheduler(new DepartureScheduler(690)));
+
+        // WHEN the distributor throttles CP1, which the scheduler gives fast charging back
+        requestHandler.plugIn("CP1", new ChargingDemand(50d, clock.millis() + Duration.ofHours(1).toMillis()));
+        requestHandler.plugIn("CP2");
+        requestHandler.plugIn("CP3");
+
+        // THEN
+        List<ChargingPoint> live = requestHandler.getChargingPoints();
+        assertThat(requestHandler.query(new ParkQuery(null, ParkQuery.CurrentLevel.HIGH, null)))
+                .extracting(ChargingPoint::getName)
+                .containsExactlyInAnyOrderElementsOf(live.stream().filter(cp -> cp.getCurrent() > LOW_CURRENT)
+                        .map(ChargingPoint::getName).collect(Collectors.toList()))
+                .contains("CP1");
+        assertThat(requestHandler.query(new ParkQuery(null, ParkQuery.CurrentLevel.LOW, null)))
+                .extracting(ChargingPoint::getName)
+                .containsExactlyInAnyOrderElementsOf(live.stream()
+                        .filter(cp -> cp.isPlugged() && cp.getCurrent() > 0 && cp.getCurrent() <= LOW_CURRENT)
+                        .map(ChargingPoint::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldRejectSimulationWhenSchedulingByDeparture() {
+        // GIVEN
+        requestHandler = new RequestHandler(chargingPointList, MAX_CURRENT, HIGH_CURRENT, LOW_CURRENT, statePersister,
+                options.withDepartureScheduler(new DepartureScheduler(690)));
+
+        // WHEN
+        Throwable thrown = catchThrowable(() -> requestHandler.simulate(
+                ImmutableList.of(new ParkEvent(ParkEvent.Type.PLUG_IN, "CP1")), null));
+
+        // THEN the simulation would follow the plug-in order, which the live state does not
+        assertThat(thrown).isInstanceOf(SimulationNotSupportedException.class);
+    }
+
+    @Test
+    public void shouldRescheduleWhenCarWillMakeItWithSlowCharging() {
+        // GIVEN
+        final Clock movingClock = mock(Clock.class);
+        when(movingClock.millis()).thenReturn(clock.millis());
+        requestHandler = new RequestHandler(chargingPointList, MAX_CURRENT, HIGH_CURRENT, LOW_CURRENT, statePersister,
+                HandlerOptions.DEFAULT.withClock(movingClock).withDepartureScheduler(new DepartureScheduler(690)));
+        requestHandler.plugIn("CP1");
+        requestHandler.plugIn("CP2", new ChargingDemand(15d, clock.millis() + Duration.ofHours(2).toMillis()));
+        requestHandler.plugIn("CP3", new ChargingDemand(5d, clock.millis() + Duration.ofHours(2).toMillis()));
+        assertThat(requestHandler.getAllowedCurrent("CP2")).isEqualTo(HIGH_CURRENT);
+
+        // WHEN
+        when(movingClock.millis()).thenReturn(clock.millis() + Duration.ofMinutes(30).toMillis());
+        requestHandler.reschedule();
+
+        // THEN
+        assertThat(requestHandler.getAllowedCurrent("CP1")).isEqualTo(HIGH_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP2")).isEqualTo(LOW_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP3")).isEqualTo(LOW_CURRENT);
+    }
+
+    @Test
+    public void shouldRejectMeterValuesOfUnknownCP() {
+        // WHEN
+        Throwable thrown = catchThrowable(() -> requestHandler.recordMeterValues(
+                ImmutableList.of(new MeterValue("CP1", 3d, null), new MeterValue("CP9", 3d, null))));
+
+        // THEN
+        assertThat(thrown).isInstanceOf(CpNotFoundException.class);
+    }
+
+    @Test
+    public void shouldQueuePlugInAndPromoteItOnPlugOff() {
+        // GIVEN
+        requestHandler = new RequestHandler(chargingPointList, 30, HIGH_CURRENT, LOW_CURRENT, statePersister, options);
+        requestHandler.plugIn("CP1");
+        requestHandler.plugIn("CP2");
+        requestHandler.plugIn("CP3");
+
+        // WHEN
+        requestHandler.plugIn("CP4");
+
+        // THEN
+        assertThat(requestHandler.getAllowedCurrent("CP4")).isEqualTo(0);
+        assertThat(requestHandler.query(new ParkQuery(ParkQuery.Status.WAITING, null, null)))
+                .extracting(ChargingPoint::getName).containsExactly("CP4");
+
+        // WHEN
+        requestHandler.plugOff("CP2");
+
+        // THEN
+        assertThat(requestHandler.getAllowedCurrent("CP4")).isEqualTo(LOW_CURRENT);
+    }
+
+    @Test
+    public void shouldRecoverWaitingQueue() {
+        // GIVEN
+        when(statePersister.readState()).thenReturn(Optional.of(ImmutableList.of(
+                new ChargingPoint("CP1", true, 10, 1L, 1L), new ChargingPoint("CP2", true, 10, 1L, 2L),
+                new ChargingPoint("CP3", true, 0, 1L, 4L), new ChargingPoint("CP4", true, 0, 1L, 3L))
+                .stream().collect(Collectors.toMap(ChargingPoint::getName, cp -> cp))));
+        requestHandler = new RequestHandler(chargingPointList, 20, HIGH_CURRENT, LOW_CURRENT, statePersister, options);
+
+        // WHEN
+        requestHandler.plugOff("CP1");
+
+        // THEN CP4 plugged in before CP3
+        assertThat(requestHandler.getAllowedCurrent("CP4")).isEqualTo(LOW_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP3")).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReportStartupPhases() {
+        // GIVEN
+        when(statePersister.readState()).thenReturn(Optional.of(chargingPointList.stream()
+                .collect(Collectors.toMap(name -> name, ChargingPoint::new))));
+
+        // WHEN
+        requestHandler = new RequestHandler(chargingPointList, MAX_CURRENT, HIGH_CURRENT, LOW_CURRENT, statePersister, options);
+
+        // THEN
+        assertThat(requestHandler.getStartupReport().getPhases().keySet())
+                .containsExactly("read state", "reconcile", "plug-in order", "index");
+    }
+
+    @Test
+    public void shouldRejectRecoveredStateNotMatchingConfiguration() {
+        // GIVEN
+        when(statePersister.readState()).thenReturn(Optional.of(ImmutableList.of("CP1", "CP2", "CP3", "CP5").stream()
+                .collect(Collectors.toMap(name -> name, ChargingPoint::new))));
+
+        // WHEN
+        Throwable thrown = catchThrowable(() ->
+                new RequestHandler(chargingPointList, MAX_CURRENT, HIGH_CURRENT, LOW_CURRENT, statePersister, options));
+
+        // THEN
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldSimulateWithoutTouchingActualState() {
+        // GIVEN
+        requestHandler.plugIn("CP1");
+        requestHandler.plugIn("CP2");
+        reset(statePersister);
+
+        // WHEN
+        List<ChargingPoint> simulated = requestHandler.simulate(
+                ImmutableList.of(new ParkEvent(ParkEvent.Type.PLUG_IN, "CP3")), null);
+
+        // THEN the simulation throttles the oldest CPs, but the actual state stays as it is
+        assertThat(simulated).extracting(ChargingPoint::toString)
+                .containsExactlyInAnyOrder("CP1 OCCUPIED 10A", "CP2 OCCUPIED 10A", "CP3 OCCUPIED 20A", "CP4 AVAILABLE");
+        assertThat(requestHandler.getAllowedCurrent("CP1")).isEqualTo(HIGH_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP2")).isEqualTo(HIGH_CURRENT);
+        assertThat(requestHandler.getAllowedCurrent("CP3")).isEqualTo(0);
+        verify(statePersister, never()).safeState(any());
+        verify(statePersister, never()).safeChanges(any(), any());
+    }
+
+    @Test
+    public void shouldSimulateWithDifferentMaxCurrent() {
+        // GIVEN
+        requestHandler.plugIn("CP1");
+        requestHandler.plugIn("CP2");
+        requestHandler.plugIn("CP3");
+
+        // WHEN
+        List<ChargingPoint> simulated = requestHandler.simulate(
+                ImmutableList.of(new ParkEvent(ParkEvent.Type.PLUG_OFF, "CP3")), 30);
+
+        // THEN
+        assertThat(simulated).extracting(ChargingPoint::toString)
+                .containsExactlyInAnyOrder("CP1 OCCUPIED 20A", "CP2 OCCUPIED 10A", "CP3 AVAILABLE", "CP4 AVAILABLE");
+        assertThat(requestHandler.getAllowedCurrent("CP3")).isEqualTo(HIGH_CURRENT);
+    }
+
+    @Test
+    public void shouldFitActualAllocationIntoSimulatedMaxCurrent() {
+        // GIVEN
+        requestHandler.plugIn("CP1");
+        requestHandler.plugIn("CP2");
+        requestHandler.plugIn("CP3");
+
+        // WHEN
+        List<ChargingPoint> simulated = requestHandler.simulate(ImmutableList.of(), 20);
+
+        // THEN the car plugged in last has to wait even without any event
+        assertThat(simulated).extracting(ChargingPoint::toString)
+                .containsExactlyInAnyOrder("CP1 OCCUPIED 10A", "CP2 OCCUPIED 10A", "CP3 WAITING", "CP4 AVAILABLE");
+        assertThat(requestHandler.getAllowedCurrent("CP3")).isEqualTo(HIGH_CURRENT);
+    }
+
+    @Test
+    public void shouldSeeChangesMadeAfterPreviousSimulation() {
+        // GIVEN
+        requestHandler.simulate(ImmutableList.of(), null);
+
+        // WHEN
+        requestHandler.plugIn("CP1");
+        List<ChargingPoint> simulated = requestHandler.simulate(ImmutableList.of(), null);
+
+        // THEN
+        assertThat(simulated).extracting(ChargingPoint::toString).contains("CP1 OCCUPIED 20A");
+    }
+
+    @Test(expected = CpNotFoundException.class)
+    public void shouldRejectSimulationOfUnknownCP() {
+        requestHandler.simulate(ImmutableList.of(new ParkEvent(ParkEvent.Type.PLUG_IN, "CP666")), null);
+    }
+
+    @Test
+    public void shouldRecordFlightRecorderEvents() throws IOException {
+        // GIVEN
+        requestHandler = new RequestHandler(chargingPointList, 30, HIGH_CURRENT, LOW_CURRENT, statePersister, options);
+        Path recordingFile = Files.createTempFile("plug-events", ".jfr");
+        List<RecordedEvent> events;
+
+        // WHEN
+        try (Recording recording = new Recording()) {
+            recording.enable("com.carpark.manager.Plug");
+            recording.enable("com.carpark.manager.QueuedPlugIn");
+            recording.start();
+            requestHandler.plugIn("CP1");
+            requestHandler.plugIn("CP2");
+            requestHandler.plugIn("CP3");
+            requestHandler.plugIn("CP4");
+            requestHandler.plugOff("CP3");
+            requestHandler.plugOff("CP4");
+            recording.stop();
+            recording.dump(recordingFile);
+            events = RecordingFile.readAllEvents(recordingFile);
+        } finally {
+            Files.deleteIfExists(recordingFile);
+        }
+
+        // THEN
+        assertThat(events).extracting(e -> e.getEventType().getName() + " " + e.getString("cpName"))
+                .containsExactly("com.carpark.manager.Plug CP1", "com.carpark.manager.Plug CP2",
+                        "com.carpark.manager.Plug CP3", "com.carpark.manager.QueuedPlugIn CP4",
+                        "com.carpark.manager.Plug CP4", "com.carpark.manager.Plug CP3",
+                        "com.carpark.manager.Plug CP4");
+        assertThat(events.get(2).getInt("throttled")).isEqualTo(1);
+        assertThat(events.get(2).getInt("totalCurrent")).isEqualTo(30);
+        assertThat(events.get(3).getInt("queuePosition")).isEqualTo(1);
+        assertThat(events.get(5).getString("action")).isEqualTo("plug-off");
+        assertThat(events.get(5).getInt("throttled")).isEqualTo(0);
+        assertThat(events.get(5).getInt("boosted")).isEqualTo(0);
+        assertThat(events.get(6).getInt("throttled")).isEqualTo(0);
+        assertThat(events.get(6).getInt("boosted")).isEqualTo(1);
+    }
+
+}